@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.dao.impl.FilmColumnStore;
+import ru.yandex.practicum.filmorate.dao.impl.ListVersions;
+import ru.yandex.practicum.filmorate.dao.index.CategoryPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmFilterIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.dao.index.FriendshipGraph;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.dao.index.TrendingFilmsIndex;
+
+/**
+ * Поднимает приложение на случайном порту с отдельной базой H2 в памяти
+ * и наполняет её синтетическими данными: rows фильмов и rows пользователей,
+ * по {@link #LIKES_PER_USER} лайка и по {@link #FRIENDS_PER_USER} друга на пользователя.
+ * Переданные профили включаются в приложении, например колоночное хранилище фильмов.
+ */
+@Slf4j
+final class BenchmarkDatabase {
+
+    static final int LIKES_PER_USER = 3;
+    static final int FRIENDS_PER_USER = 2;
+    private static final int CHUNK_SIZE = 20_000;
+
+    private BenchmarkDatabase() {
+    }
+
+    static ConfigurableApplicationContext start(int rows, String... profiles) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .profiles(profiles)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "logging.level.ru.yandex.practicum.filmorate=warn")
+                .run();
+        long started = System.nanoTime();
+        seed(context.getBean(JdbcTemplate.class), rows);
+        // Рейтинги читают число лайков из матрицы, поэтому она загружается первой
+        context.getBean(LikeMatrix.class).reload();
+        context.getBean(FilmPopularityIndex.class).reload();
+        context.getBean(FriendshipGraph.class).reload();
+        context.getBean(FilmSearchIndex.class).reload();
+        context.getBean(FilmFilterIndex.class).reload();
+        context.getBean(TrendingFilmsIndex.class).reload();
+        context.getBean(CategoryPopularityIndex.class).reload();
+        context.getBean(ListVersions.class).reload();
+        context.getBeanProvider(FilmColumnStore.class).ifAvailable(FilmColumnStore::reload);
+        log.warn("База для бенчмарка наполнена: {} строк за {} мс", rows, (System.nanoTime() - started) / 1_000_000);
+        return context;
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate, int rows) {
+        // Вставка идёт порциями: одна транзакция на миллион строк в H2 в разы медленнее
+        for (int from = 1; from <= rows; from += CHUNK_SIZE) {
+            int to = Math.min(rows, from + CHUNK_SIZE - 1);
+            jdbcTemplate.update("INSERT INTO PUBLIC.USERS (USER_ID, EMAIL, LOGIN, NAME, BIRTHDAY)\n" +
+                    "SELECT X, 'user' || X || '@mail.ru', 'user' || X, 'Пользователь ' || X,\n" +
+                    "DATEADD('DAY', MOD(X, 15000), DATE '1960-01-01')\n" +
+                    "FROM SYSTEM_RANGE(?, ?);", from, to);
+            jdbcTemplate.update("INSERT INTO PUBLIC.FILMS (FILM_ID, TITLE, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID)\n" +
+                    "SELECT X, 'Фильм ' || X, 'Описание фильма ' || X,\n" +
+                    "DATEADD('DAY', MOD(X, 25000), DATE '1950-01-01'), 60 + MOD(X, 120), MOD(X, 5) + 1\n" +
+                    "FROM SYSTEM_RANGE(?, ?);", from, to);
+            jdbcTemplate.update("INSERT INTO PUBLIC.FILM_GENRE (FILM_ID, GENRE_ID)\n" +
+                    "SELECT X, MOD(X, 6) + 1 FROM SYSTEM_RANGE(?, ?);", from, to);
+        }
+        for (int from = 1; from <= rows; from += CHUNK_SIZE) {
+            int to = Math.min(rows, from + CHUNK_SIZE - 1);
+            // Квадрат в формуле даёт неравномерную популярность: часть фильмов собирает заметно больше лайков
+            jdbcTemplate.update("INSERT INTO PUBLIC.LIKES (FILM_ID, USER_ID)\n" +
+                    "SELECT DISTINCT MOD(CAST(u.X AS BIGINT) * u.X + k.X * 7919, ?) + 1, u.X\n" +
+                    "FROM SYSTEM_RANGE(?, ?) u CROSS JOIN SYSTEM_RANGE(1, ?) k;", rows, from, to, LIKES_PER_USER);
+            jdbcTemplate.update("INSERT INTO PUBLIC.FRIENDS (USER_ID, FRIEND_ID, IF_APPROVED)\n" +
+                    "SELECT DISTINCT u.X, MOD(CAST(u.X AS BIGINT) * 31 + k.X * 7919, ?) + 1, MOD(u.X + k.X, 2) = 0\n" +
+                    "FROM SYSTEM_RANGE(?, ?) u CROSS JOIN SYSTEM_RANGE(1, ?) k\n" +
+                    "WHERE MOD(CAST(u.X AS BIGINT) * 31 + k.X * 7919, ?) + 1 <> u.X;",
+                    rows, from, to, FRIENDS_PER_USER, rows);
+        }
+        jdbcTemplate.execute("ALTER SEQUENCE PUBLIC.FILM_ID_SEQ RESTART WITH " + (rows + 1));
+        jdbcTemplate.execute("ALTER TABLE PUBLIC.USERS ALTER COLUMN USER_ID RESTART WITH " + (rows + 1));
+    }
+}
@@ -0,0 +1,131 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.dao.impl.FilmDbStorage;
+import ru.yandex.practicum.filmorate.dao.index.FilmFilterIndex;
+import ru.yandex.practicum.filmorate.model.CursorPage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Выборка фильмов по нескольким фильтрам сразу: битовые индексы против запросов с JOIN через FILM_GENRE.
+ * В базе бенчмарка у фильма один жанр из шести, рейтинг из пяти и дата выпуска в 1950–2018 годах.
+ * Фильтр dense пропускает около 4% фильмов, selective — около 0,05%, и SQL с LIMIT
+ * приходится просмотреть заметно больше строк, прежде чем набрать страницу.
+ * Диапазон годов меняется от вызова к вызову по кругу из {@link #VARIANTS} значений:
+ * H2 повторно отдаёт результат одинакового запроса к неизменённым таблицам, не выполняя его.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilmFilterBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int VARIANTS = 16;
+    private static final String SQL_FILTER = "SELECT DISTINCT f.FILM_ID FROM PUBLIC.FILMS f\n" +
+            "JOIN PUBLIC.FILM_GENRE fg ON f.FILM_ID = fg.FILM_ID\n" +
+            "WHERE fg.GENRE_ID IN (%s) AND f.RATING_ID IN (%s)\n" +
+            "AND f.RELEASE_DATE BETWEEN ? AND ?\n" +
+            "ORDER BY f.FILM_ID LIMIT ?;";
+    private static final String SQL_POPULAR_FILTER = "SELECT f.FILM_ID FROM PUBLIC.FILMS f\n" +
+            "JOIN PUBLIC.FILM_GENRE fg ON f.FILM_ID = fg.FILM_ID\n" +
+            "LEFT JOIN PUBLIC.LIKES l ON f.FILM_ID = l.FILM_ID\n" +
+            "WHERE fg.GENRE_ID IN (%s) AND f.RATING_ID IN (%s)\n" +
+            "AND f.RELEASE_DATE BETWEEN ? AND ?\n" +
+            "GROUP BY f.FILM_ID ORDER BY COUNT(l.USER_ID) DESC, f.FILM_ID LIMIT ?;";
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"dense", "selective"})
+    private String selectivity;
+
+    private ConfigurableApplicationContext context;
+    private FilmDbStorage filmStorage;
+    private FilmFilterIndex filterIndex;
+    private JdbcTemplate jdbcTemplate;
+    private final FilmFilter[] filters = new FilmFilter[VARIANTS];
+    private final FilmFilter[] popularFilters = new FilmFilter[VARIANTS];
+    private String sqlFilter;
+    private String sqlPopularFilter;
+    private int variant;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkDatabase.start(rows);
+        filmStorage = context.getBean(FilmDbStorage.class);
+        filterIndex = context.getBean(FilmFilterIndex.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        boolean dense = "dense".equals(selectivity);
+        for (int i = 0; i < VARIANTS; i++) {
+            int yearFrom = 1960 + i * 2;
+            filters[i] = dense
+                    ? FilmFilter.builder().genreIds(Set.of(2, 5)).mpaIds(Set.of(1, 3))
+                    .yearFrom(yearFrom).yearTo(yearFrom + 19).build()
+                    : FilmFilter.builder().genreIds(Set.of(2)).mpaIds(Set.of(3))
+                    .yearFrom(yearFrom).yearTo(yearFrom).build();
+            popularFilters[i] = filters[i].toBuilder().sortByPopularity(true).build();
+        }
+        String genres = filters[0].getGenreIds().stream().map(String::valueOf).collect(Collectors.joining(", "));
+        String mpa = filters[0].getMpaIds().stream().map(String::valueOf).collect(Collectors.joining(", "));
+        sqlFilter = String.format(SQL_FILTER, genres, mpa);
+        sqlPopularFilter = String.format(SQL_POPULAR_FILTER, genres, mpa);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int[] bitmapIds() {
+        return filterIndex.find(filters[nextVariant()], 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Integer> sqlJoinIds() {
+        FilmFilter filter = filters[nextVariant()];
+        return jdbcTemplate.queryForList(sqlFilter, Integer.class, firstDay(filter), lastDay(filter), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public int[] bitmapIdsByPopularity() {
+        return filterIndex.find(popularFilters[nextVariant()], 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Integer> sqlJoinIdsByPopularity() {
+        FilmFilter filter = filters[nextVariant()];
+        return jdbcTemplate.queryForList(sqlPopularFilter, Integer.class, firstDay(filter), lastDay(filter),
+                PAGE_SIZE);
+    }
+
+    @Benchmark
+    public CursorPage<Film> findFilms() {
+        return filmStorage.findFilms(filters[nextVariant()], 0, PAGE_SIZE);
+    }
+
+    private int nextVariant() {
+        variant = (variant + 1) % VARIANTS;
+        return variant;
+    }
+
+    private static LocalDate firstDay(FilmFilter filter) {
+        return LocalDate.of(filter.getYearFrom(), 1, 1);
+    }
+
+    private static LocalDate lastDay(FilmFilter filter) {
+        return LocalDate.of(filter.getYearTo(), 12, 31);
+    }
+}
@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.dao.impl.FilmDbStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сколько памяти кучи удерживает каталог фильмов, целиком загруженный через streamFilms.
+ * Занятая куча замеряется после сборки мусора до загрузки и после неё, пока список ещё жив;
+ * разница на один фильм выводится счётчиком retainedBytesPerFilm. JMH складывает такие счётчики
+ * по итерациям, поэтому значение на фильм смотрится в строках отдельных итераций, а не в итоговой таблице.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilmFootprintBenchmark {
+
+    private static final int GC_ROUNDS = 3;
+
+    @Param({"1000000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private FilmDbStorage filmStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkDatabase.start(rows);
+        filmStorage = context.getBean(FilmDbStorage.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Film> loadCatalog(Footprint footprint) throws InterruptedException {
+        long before = usedHeap();
+        List<Film> films = new ArrayList<>(rows);
+        filmStorage.streamFilms(films::add);
+        long after = usedHeap();
+        footprint.retainedBytesPerFilm = (double) (after - before) / films.size();
+        return films;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < GC_ROUNDS; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public double retainedBytesPerFilm;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedBytesPerFilm = 0;
+        }
+    }
+}
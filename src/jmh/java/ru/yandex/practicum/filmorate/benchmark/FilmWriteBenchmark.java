@@ -0,0 +1,108 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.metrics.StatementCounter;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Создание и обновление фильма через FilmService. Кроме времени, в результатах есть счётчики operations,
+ * statements и commits: JMH суммирует их по итерациям, поэтому число SQL-запросов и фиксаций транзакций
+ * на одну операцию — это statements / operations и commits / operations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmWriteBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private FilmService filmService;
+    private Film updatedFilm;
+    private boolean alternate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkDatabase.start(ROWS);
+        filmService = context.getBean(FilmService.class);
+        updatedFilm = filmService.createFilm(makeFilm(1, 2));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Film createFilm(RoundTrips roundTrips) {
+        return roundTrips.measure(() -> filmService.createFilm(makeFilm(1, 2)));
+    }
+
+    @Benchmark
+    public Film updateFilmSameGenres(RoundTrips roundTrips) {
+        Film film = makeFilm(1, 2);
+        film.setId(updatedFilm.getId());
+        return roundTrips.measure(() -> filmService.updateFilm(film));
+    }
+
+    @Benchmark
+    public Film updateFilmChangedGenres(RoundTrips roundTrips) {
+        // Каждый вызов меняет один жанр: {1, 2} -> {2, 3} -> {1, 2}
+        alternate = !alternate;
+        Film film = alternate ? makeFilm(2, 3) : makeFilm(1, 2);
+        film.setId(updatedFilm.getId());
+        return roundTrips.measure(() -> filmService.updateFilm(film));
+    }
+
+    private static Film makeFilm(int... genreIds) {
+        LinkedHashSet<Genre> genres = new LinkedHashSet<>();
+        for (int genreId : genreIds) {
+            genres.add(new Genre(genreId, null));
+        }
+        return Film.builder()
+                .name("Фильм")
+                .description("Описание фильма")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(120)
+                .mpa(new Mpa(1, null))
+                .genres(genres)
+                .build();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RoundTrips {
+        public long operations;
+        public long statements;
+        public long commits;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            operations = 0;
+            statements = 0;
+            commits = 0;
+        }
+
+        Film measure(Supplier<Film> operation) {
+            long statementsBefore = StatementCounter.current();
+            long commitsBefore = StatementCounter.currentCommits();
+            Film film = operation.get();
+            operations++;
+            statements += StatementCounter.current() - statementsBefore;
+            commits += StatementCounter.currentCommits() - commitsBefore;
+            return film;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.dao.index.FriendshipGraph;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подбор друзей на синтетическом графе со степенным распределением степеней (модель Барабаши — Альберт).
+ * Режим SampleTime даёт перцентили времени одного запроса: для случайных пользователей
+ * и для {@link #HUBS} самых связанных, у которых кандидатов в друзья больше всего.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FriendshipGraphBenchmark {
+
+    private static final int USERS = 200_000;
+    private static final int EDGES_PER_USER = 8;
+    private static final int QUERIES = 2_000;
+    private static final int HUBS = 100;
+    private static final int LIMIT = 10;
+
+    @Param({"random", "hubs"})
+    private String users;
+
+    private FriendshipGraph graph;
+    private int[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = new FriendshipGraph(null);
+        Random random = new Random(42);
+        int[] degrees = buildPowerLawGraph(random);
+        queries = "hubs".equals(users) ? topByDegree(degrees) : random.ints(QUERIES, 1, USERS + 1).toArray();
+    }
+
+    @Benchmark
+    public int[] suggestFriends() {
+        int userId = queries[next];
+        next = next + 1 == queries.length ? 0 : next + 1;
+        return graph.suggestFriends(userId, LIMIT);
+    }
+
+    private int[] buildPowerLawGraph(Random random) {
+        int[] degrees = new int[USERS + 1];
+        int[] endpoints = new int[2 * USERS * EDGES_PER_USER];
+        int endpointsCount = 0;
+        for (int user = 1; user <= USERS; user++) {
+            int edges = Math.min(EDGES_PER_USER, user - 1);
+            for (int e = 0; e < edges; e++) {
+                int friend = endpointsCount == 0 ? 1 : endpoints[random.nextInt(endpointsCount)];
+                if (friend == user) {
+                    continue;
+                }
+                graph.addFriend(user, friend);
+                graph.addFriend(friend, user);
+                degrees[user]++;
+                degrees[friend]++;
+                endpoints[endpointsCount++] = user;
+                endpoints[endpointsCount++] = friend;
+            }
+        }
+        return degrees;
+    }
+
+    private static int[] topByDegree(int[] degrees) {
+        Integer[] byDegree = new Integer[USERS];
+        for (int i = 0; i < USERS; i++) {
+            byDegree[i] = i + 1;
+        }
+        Arrays.sort(byDegree, (a, b) -> Integer.compare(degrees[b], degrees[a]));
+        int[] hubs = new int[HUBS];
+        for (int i = 0; i < HUBS; i++) {
+            hubs[i] = byDegree[i];
+        }
+        return hubs;
+    }
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.impl.ColumnarFilmStorage;
+import ru.yandex.practicum.filmorate.dao.index.LikeListener;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Шквал лайков: каждый вызов ставит лайк случайного пользователя и снимает его.
+ * В режиме hot все лайки достаются одному фильму, в uniform — случайному из {@link #ROWS}.
+ * Путь storage проходит через {@link FilmStorage#addLikeToFilm} и {@link FilmStorage#deleteLike} с записью в H2,
+ * путь listeners вызывает только слушателей лайков приложения в том порядке, в каком их вызывает хранилище,
+ * чтобы отделить блокировки индексов в памяти от базы. Хранилище jdbc или колоночное, где слушателем
+ * становится ещё и колоночный каталог.
+ * Число потоков задаётся ключом -t, результат — суммарная пропускная способность всех потоков.
+ * Масштабирование по ядрам снимается прогоном с -t 1, 2, 4, 8 на машине, где ядер не меньше потоков:
+ * в режиме hot пропускная способность на поток не должна падать с ростом числа потоков.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LikeStormBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    @Param({"hot", "uniform"})
+    private String distribution;
+
+    @Param({"storage", "listeners"})
+    private String path;
+
+    @Param({"jdbc", ColumnarFilmStorage.PROFILE})
+    private String storage;
+
+    private ConfigurableApplicationContext context;
+    private FilmStorage filmStorage;
+    private List<LikeListener> likeListeners;
+    private boolean hot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hot = "hot".equals(distribution);
+        context = ColumnarFilmStorage.PROFILE.equals(storage)
+                ? BenchmarkDatabase.start(ROWS, ColumnarFilmStorage.PROFILE)
+                : BenchmarkDatabase.start(ROWS);
+        filmStorage = context.getBean(FilmStorage.class);
+        likeListeners = context.getBeanProvider(LikeListener.class).orderedStream().collect(Collectors.toList());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void likeAndUnlike() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int filmId = hot ? 1 : 1 + random.nextInt(ROWS);
+        int userId = 1 + random.nextInt(ROWS);
+        if ("storage".equals(path)) {
+            // Уже существующий лайк из наполнения базы не снимается, чтобы она не менялась от итерации к итерации
+            if (filmStorage.addLikeToFilm(filmId, userId)) {
+                filmStorage.deleteLike(filmId, userId);
+            }
+        } else {
+            for (LikeListener listener : likeListeners) {
+                listener.onLikeAdded(filmId, userId);
+            }
+            for (LikeListener listener : likeListeners) {
+                listener.onLikeRemoved(filmId, userId);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Условные GET-запросы по версиям строк в базе. ETag строится из версии, поэтому при совпадении
+ * с If-None-Match ответ 304 отдаётся без загрузки и сериализации данных.
+ */
+final class ConditionalGet {
+
+    private ConditionalGet() {
+    }
+
+    static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Читает версию только если клиент прислал If-None-Match. При совпадении выставляет статус 304.
+     */
+    static boolean isNotModified(WebRequest request, LongSupplier version) {
+        return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(etag(version.getAsLong()));
+    }
+}
@@ -1,17 +1,35 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Set;
 
 @Slf4j
 @RestController
@@ -20,28 +38,102 @@ import java.util.List;
 @Validated
 public class FilmController {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final String SORT_POPULAR = "popular";
+    private static final String SORT_ID = "id";
+
     @Autowired
     private HttpServletRequest request;
 
     private final FilmService filmService;
+    private final FilmImportService filmImportService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
-    public List<Film> getFilms() {
+    public ResponseEntity<List<Film>> getFilms(
+            @RequestParam(required = false) @Min(0) Integer after,
+            @RequestParam(required = false) @Min(1) @Max(1000) Integer limit,
+            @RequestParam(required = false) Set<Integer> genreId,
+            @RequestParam(required = false) Set<Integer> mpaId,
+            @RequestParam(required = false) Integer yearFrom,
+            @RequestParam(required = false) Integer yearTo,
+            @RequestParam(required = false) String sort,
+            WebRequest webRequest) {
         logRequest(request);
-        return filmService.getFilms();
+        FilmFilter filter = makeFilter(genreId, mpaId, yearFrom, yearTo, sort);
+        if (filter != null && filter.isSortByPopularity() && after != null) {
+            throw new ValidationException("Параметр after не поддерживается при sort=" + SORT_POPULAR + ".");
+        }
+        // Версию читаем до списка: если список изменится между запросами, клиент получит устаревший ETag,
+        // но не устаревшие данные
+        String etag = ConditionalGet.etag(filmService.getFilmsVersion());
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        if (filter == null && after == null && limit == null) {
+            return ResponseEntity.ok().eTag(etag).body(filmService.getFilms());
+        }
+        int from = after == null ? 0 : after;
+        int size = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        CursorPage<Film> page = filter == null
+                ? filmService.getFilmsPage(from, size)
+                : filmService.findFilms(filter, from, size);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag);
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamFilms() {
+        logRequest(request);
+        return out -> {
+            try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(out)) {
+                filmService.streamFilms(film -> write(writer, film));
+            }
+        };
     }
 
     @GetMapping("/{id}")
-    public Film getFilmById(@PathVariable int id) {
+    public ResponseEntity<Film> getFilmById(@PathVariable int id, WebRequest webRequest) {
         logRequest(request);
-        return filmService.getFilmById(id);
+        if (ConditionalGet.isNotModified(webRequest, () -> filmService.getFilmVersion(id))) {
+            return null;
+        }
+        Film film = filmService.getFilmById(id);
+        return ResponseEntity.ok().eTag(ConditionalGet.etag(film.getVersion())).body(film);
     }
 
-    @GetMapping("/popular")
-    public List<Film> getPopularFilms(
-            @RequestParam(defaultValue = "10") @Min(1) int count) {
+    @GetMapping(value = "/popular", produces = MediaType.APPLICATION_JSON_VALUE)
+    public byte[] getPopularFilms(
+            @RequestParam(defaultValue = "10") @Min(1) int count,
+            @RequestParam(required = false) Integer genreId,
+            @RequestParam(required = false) Integer mpaId) throws IOException {
         logRequest(request);
-        return filmService.getPopularFilms(count);
+        if (genreId == null && mpaId == null) {
+            return filmService.getPopularFilmsJson(count);
+        }
+        return objectMapper.writeValueAsBytes(filmService.getPopularFilms(count, genreId, mpaId));
+    }
+
+    @GetMapping("/trending")
+    public List<Film> getTrendingFilms(
+            @RequestParam(defaultValue = "24h") String window,
+            @RequestParam(defaultValue = "10") @Min(1) @Max(100) int count) {
+        logRequest(request);
+        TrendingWindow trendingWindow = TrendingWindow.of(window)
+                .orElseThrow(() -> new ValidationException("Неизвестное окно трендов: " + window + "."));
+        return filmService.getTrendingFilms(trendingWindow, count);
+    }
+
+    @GetMapping("/search")
+    public List<Film> searchFilms(
+            @RequestParam @NotBlank String q,
+            @RequestParam(defaultValue = "10") @Min(1) @Max(100) int limit) {
+        logRequest(request);
+        return filmService.searchFilms(q, limit);
     }
 
     @PostMapping
@@ -50,6 +142,12 @@ public class FilmController {
         return filmService.createFilm(film);
     }
 
+    @PostMapping("/batch")
+    public FilmImportResult importFilms(InputStream body) throws IOException {
+        logRequest(request);
+        return filmImportService.importFilms(body);
+    }
+
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
         logRequest(request);
@@ -68,6 +166,34 @@ public class FilmController {
         return filmService.unlikeFilm(id, userId);
     }
 
+    /**
+     * @return фильтр по параметрам запроса или null, если ни один из них не задан
+     */
+    private FilmFilter makeFilter(Set<Integer> genreIds, Set<Integer> mpaIds, Integer yearFrom, Integer yearTo,
+                                  String sort) {
+        if (sort != null && !SORT_POPULAR.equals(sort) && !SORT_ID.equals(sort)) {
+            throw new ValidationException("Неизвестная сортировка: " + sort + ".");
+        }
+        if (genreIds == null && mpaIds == null && yearFrom == null && yearTo == null && sort == null) {
+            return null;
+        }
+        return FilmFilter.builder()
+                .genreIds(genreIds == null ? Set.of() : genreIds)
+                .mpaIds(mpaIds == null ? Set.of() : mpaIds)
+                .yearFrom(yearFrom)
+                .yearTo(yearTo)
+                .sortByPopularity(SORT_POPULAR.equals(sort))
+                .build();
+    }
+
+    private void write(SequenceWriter writer, Object value) {
+        try {
+            writer.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private void logRequest(HttpServletRequest request) {
         log.debug("Получен запрос к эндпоинту: '{} {}', Строка параметров запроса: '{}'",
                 request.getMethod(), request.getRequestURI(), request.getQueryString());
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.dao.impl.LikeWriteBuffer;
+import ru.yandex.practicum.filmorate.metrics.StorageMetrics;
+import ru.yandex.practicum.filmorate.model.LikeBufferStats;
+import ru.yandex.practicum.filmorate.model.StorageOperationStats;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+
+@Slf4j
+@RestController
+@RequestMapping("/metrics")
+@RequiredArgsConstructor
+public class MetricsController {
+
+    @Autowired
+    private HttpServletRequest request;
+
+    private final LikeWriteBuffer likeWriteBuffer;
+    private final StorageMetrics storageMetrics;
+
+    @GetMapping("/likes-buffer")
+    public LikeBufferStats getLikeBufferStats() {
+        logRequest(request);
+        return likeWriteBuffer.getStats();
+    }
+
+    @GetMapping("/storage")
+    public List<StorageOperationStats> getStorageStats() {
+        logRequest(request);
+        return storageMetrics.getStats();
+    }
+
+    @DeleteMapping("/storage")
+    public void resetStorageStats() {
+        logRequest(request);
+        storageMetrics.reset();
+    }
+
+    private void logRequest(HttpServletRequest request) {
+        log.debug("Получен запрос к эндпоинту: '{} {}', Строка параметров запроса: '{}'",
+                request.getMethod(), request.getRequestURI(), request.getQueryString());
+    }
+}
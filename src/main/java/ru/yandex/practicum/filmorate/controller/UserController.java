@@ -1,17 +1,28 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @Slf4j
@@ -21,21 +32,58 @@ import java.util.List;
 @Validated
 public class UserController {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     @Autowired
     private HttpServletRequest request;
 
     private final UserService userService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
-    public List<User> getUsers() {
+    public ResponseEntity<List<User>> getUsers(
+            @RequestParam(required = false) @Min(0) Integer after,
+            @RequestParam(required = false) @Min(1) @Max(1000) Integer limit,
+            WebRequest webRequest) {
+        logRequest(request);
+        // Версию читаем до списка: если список изменится между запросами, клиент получит устаревший ETag,
+        // но не устаревшие данные
+        String etag = ConditionalGet.etag(userService.getUsersVersion());
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        if (after == null && limit == null) {
+            return ResponseEntity.ok().eTag(etag).body(userService.getUsers());
+        }
+        CursorPage<User> page = userService.getUsersPage(
+                after == null ? 0 : after,
+                limit == null ? DEFAULT_PAGE_SIZE : limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag);
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamUsers() {
         logRequest(request);
-        return userService.getUsers();
+        return out -> {
+            try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(out)) {
+                userService.streamUsers(user -> write(writer, user));
+            }
+        };
     }
 
     @GetMapping("/{id}")
-    public User getUserById(@PathVariable @Min(0) int id) {
+    public ResponseEntity<User> getUserById(@PathVariable @Min(0) int id, WebRequest webRequest) {
         logRequest(request);
-        return userService.getUserById(id);
+        if (ConditionalGet.isNotModified(webRequest, () -> userService.getUserVersion(id))) {
+            return null;
+        }
+        User user = userService.getUserById(id);
+        return ResponseEntity.ok().eTag(ConditionalGet.etag(user.getVersion())).body(user);
     }
 
     @GetMapping("/{id}/friends")
@@ -52,6 +100,22 @@ public class UserController {
         return userService.getCommonFriends(id, otherId);
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(
+            @PathVariable @Min(0) int id,
+            @RequestParam(defaultValue = "10") @Min(1) @Max(100) int limit) {
+        logRequest(request);
+        return userService.getFriendSuggestions(id, limit);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public List<Film> getRecommendations(
+            @PathVariable @Min(0) int id,
+            @RequestParam(defaultValue = "10") @Min(1) @Max(100) int count) {
+        logRequest(request);
+        return userService.getRecommendations(id, count);
+    }
+
     @PostMapping
     public User createUser(@Valid @RequestBody User user) {
         logRequest(request);
@@ -80,6 +144,14 @@ public class UserController {
         userService.deleteFriend(id, friendId);
     }
 
+    private void write(SequenceWriter writer, Object value) {
+        try {
+            writer.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private void logRequest(HttpServletRequest request) {
         log.debug("Получен запрос к эндпоинту: '{} {}', Строка параметров запроса: '{}'",
                 request.getMethod(), request.getRequestURI(), request.getQueryString());
@@ -1,24 +1,86 @@
 package ru.yandex.practicum.filmorate.dao;
 
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     List<Film> getFilms();
 
+    CursorPage<Film> getFilmsPage(int after, int limit);
+
+    /**
+     * Выборка по фильтру. Курсор следующей страницы возвращается только при сортировке по id.
+     */
+    CursorPage<Film> findFilms(FilmFilter filter, int after, int limit);
+
+    void streamFilms(Consumer<Film> consumer);
+
     Film createFilm(Film film);
 
+    List<Film> createFilms(List<Film> films);
+
     Film updateFilm(Film film);
 
     Film getFilmById(int id);
 
     boolean isFilmPresent(int id);
 
-    void addLikeToFilm(int id, int userId);
+    /**
+     * @return версия фильма, которая растёт при каждом изменении фильма, его жанров и лайков
+     */
+    long getFilmVersion(int id);
+
+    /**
+     * @return версия всего списка фильмов, которая растёт при любом добавлении или изменении фильма
+     */
+    long getFilmsVersion();
+
+    /**
+     * @return true, если лайк добавлен, false, если он уже был
+     */
+    boolean addLikeToFilm(int id, int userId);
 
-    void deleteLike(int id, int userId);
+    /**
+     * @return true, если лайк удалён, false, если его не было
+     */
+    boolean deleteLike(int id, int userId);
+
+    /**
+     * Ставит лайк, если его ещё не было.
+     *
+     * @return фильм после лайка, собранный без отдельного чтения фильма с жанрами
+     */
+    Film likeFilm(int id, int userId);
+
+    /**
+     * Снимает лайк, если он был.
+     *
+     * @return фильм после дизлайка, собранный без отдельного чтения фильма с жанрами
+     */
+    Film unlikeFilm(int id, int userId);
 
     List<Film> getPopularFilms(int count);
 
+    /**
+     * Популярные фильмы жанра genreId и рейтинга mpaId, null означает отсутствие условия.
+     */
+    List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId);
+
+    /**
+     * Фильмы с наибольшим числом лайков за окно window, фильмы без лайков за это окно не попадают.
+     */
+    List<Film> getTrendingFilms(TrendingWindow window, int count);
+
+    List<Film> getRecommendations(int userId, int count);
+
+    /**
+     * Поиск по словам названия и описания, каждое слово запроса ищется как начало слова.
+     */
+    List<Film> searchFilms(String query, int limit);
+
 }
@@ -1,27 +1,51 @@
 package ru.yandex.practicum.filmorate.dao;
 
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     List<User> getUsers();
 
+    CursorPage<User> getUsersPage(int after, int limit);
+
+    void streamUsers(Consumer<User> consumer);
+
     User createUser(User user);
 
     User updateUser(User user);
 
     Optional<User> getUserById(int id);
 
+    /**
+     * @return версия пользователя, которая растёт при каждом его изменении
+     */
+    long getUserVersion(int id);
+
+    /**
+     * @return версия всего списка пользователей, которая растёт при любом добавлении или изменении пользователя
+     */
+    long getUsersVersion();
+
     List<User> getFriends(int id);
 
     Boolean isUserPresent(int id);
 
-    void checkAndUpdateFriends(int id, int friendId);
+    /**
+     * @return true, если заявка создана или подтверждена, false, если дружба уже была
+     */
+    boolean checkAndUpdateFriends(int id, int friendId);
 
-    void deleteFriend(int id, int friendId);
+    /**
+     * @return true, если друг удалён, false, если его не было среди друзей
+     */
+    boolean deleteFriend(int id, int friendId);
 
     List<User> getCommonFriends(int id1, int id2);
 
+    List<User> getFriendSuggestions(int id, int limit);
+
 }
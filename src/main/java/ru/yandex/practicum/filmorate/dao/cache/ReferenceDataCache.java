@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.dao.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Справочники жанров и рейтингов MPA в памяти.
+ * Загружаются при старте и перечитываются только явным вызовом {@link #refresh()},
+ * читатели всегда видят целиком один неизменяемый снимок.
+ * Фильмы ссылаются на общие экземпляры из снимка: рейтинг MPA хранится один на id,
+ * а набор жанров один на битовую маску, где бит с номером id жанра означает его наличие,
+ * поэтому id жанров должны укладываться в диапазон 0..63.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataCache {
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), Map.of(), new ConcurrentHashMap<>());
+
+    @PostConstruct
+    public void refresh() {
+        Map<Integer, Genre> genres = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT * FROM PUBLIC.GENRES ORDER BY GENRE_ID;", rs -> {
+            Genre genre = new Genre(rs.getInt("GENRE_ID"), rs.getString("GENRE_TITLE"));
+            if (genre.getId() < 0 || genre.getId() >= Long.SIZE) {
+                throw new IllegalStateException("Id жанра " + genre.getId() + " не помещается в битовую маску.");
+            }
+            genres.put(genre.getId(), genre);
+        });
+        Map<Integer, Mpa> mpa = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT * FROM PUBLIC.RATINGS ORDER BY RATING_ID;", rs -> {
+            Mpa rating = new Mpa(rs.getInt("RATING_ID"), rs.getString("RATING_NAME"));
+            mpa.put(rating.getId(), rating);
+        });
+        snapshot = new Snapshot(Collections.unmodifiableMap(genres), Collections.unmodifiableMap(mpa),
+                new ConcurrentHashMap<>());
+        log.debug("Справочники загружены: жанров {}, рейтингов {}", genres.size(), mpa.size());
+    }
+
+    public List<Genre> getGenres() {
+        return new ArrayList<>(snapshot.getGenres().values());
+    }
+
+    public Optional<Genre> getGenre(int id) {
+        return Optional.ofNullable(snapshot.getGenres().get(id));
+    }
+
+    /**
+     * Общий неизменяемый набор жанров по маске из {@link #genreBit(int)}, упорядоченный по id.
+     * Биты жанров, которых нет в справочнике, пропускаются.
+     */
+    public Set<Genre> getGenres(long genreMask) {
+        Snapshot current = snapshot;
+        return current.getGenreSets().computeIfAbsent(genreMask, mask -> {
+            Set<Genre> genres = new LinkedHashSet<>();
+            for (long bits = mask; bits != 0; bits &= bits - 1) {
+                Genre genre = current.getGenres().get(Long.numberOfTrailingZeros(bits));
+                if (genre != null) {
+                    genres.add(genre);
+                }
+            }
+            return Collections.unmodifiableSet(genres);
+        });
+    }
+
+    public static long genreBit(int genreId) {
+        return genreId >= 0 && genreId < Long.SIZE ? 1L << genreId : 0;
+    }
+
+    public List<Mpa> getMpaList() {
+        return new ArrayList<>(snapshot.getMpa().values());
+    }
+
+    public Optional<Mpa> getMpa(int id) {
+        return Optional.ofNullable(snapshot.getMpa().get(id));
+    }
+
+    @Value
+    private static class Snapshot {
+        Map<Integer, Genre> genres;
+        Map<Integer, Mpa> mpa;
+        Map<Long, Set<Genre>> genreSets;
+    }
+}
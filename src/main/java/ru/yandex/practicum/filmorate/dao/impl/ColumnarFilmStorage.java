@@ -0,0 +1,192 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.index.CategoryPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmFilterIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.dao.index.TrendingFilmsIndex;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Хранилище фильмов для узлов, которые в основном читают. Включается профилем {@value #PROFILE}.
+ * Чтение фильмов идёт из {@link FilmColumnStore} и индексов в памяти без обращений к базе,
+ * запись и лайки выполняет {@link FilmDbStorage}, после чего сохранённый фильм попадает в колонки.
+ */
+@Primary
+@Component
+@Profile(ColumnarFilmStorage.PROFILE)
+@AllArgsConstructor
+public class ColumnarFilmStorage implements FilmStorage {
+
+    public static final String PROFILE = "columnar";
+    private static final int STREAM_CHUNK_SIZE = 1000;
+
+    private final FilmDbStorage filmDbStorage;
+    private final FilmColumnStore columns;
+    private final FilmPopularityIndex popularityIndex;
+    private final LikeMatrix likeMatrix;
+    private final FilmSearchIndex searchIndex;
+    private final FilmFilterIndex filterIndex;
+    private final TrendingFilmsIndex trendingIndex;
+    private final CategoryPopularityIndex categoryPopularityIndex;
+
+    @Override
+    public List<Film> getFilms() {
+        return columns.getPage(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public CursorPage<Film> getFilmsPage(int after, int limit) {
+        List<Film> films = columns.getPage(after, limit + 1);
+        Integer nextCursor = null;
+        if (films.size() > limit) {
+            films = new ArrayList<>(films.subList(0, limit));
+            nextCursor = films.get(limit - 1).getId();
+        }
+        return new CursorPage<>(films, nextCursor);
+    }
+
+    @Override
+    public CursorPage<Film> findFilms(FilmFilter filter, int after, int limit) {
+        if (filter.isSortByPopularity()) {
+            return new CursorPage<>(getFilmsByIds(filterIndex.find(filter, after, limit)), null);
+        }
+        int[] ids = filterIndex.find(filter, after, limit + 1);
+        Integer nextCursor = null;
+        if (ids.length > limit) {
+            ids = Arrays.copyOf(ids, limit);
+            nextCursor = ids[limit - 1];
+        }
+        return new CursorPage<>(getFilmsByIds(ids), nextCursor);
+    }
+
+    /**
+     * Отдаёт фильмы порциями по {@link #STREAM_CHUNK_SIZE}, не удерживая блокировку каталога,
+     * пока потребитель обрабатывает порцию.
+     */
+    @Override
+    public void streamFilms(Consumer<Film> consumer) {
+        int after = 0;
+        List<Film> chunk;
+        do {
+            chunk = columns.getPage(after, STREAM_CHUNK_SIZE);
+            chunk.forEach(consumer);
+            if (!chunk.isEmpty()) {
+                after = chunk.get(chunk.size() - 1).getId();
+            }
+        } while (chunk.size() == STREAM_CHUNK_SIZE);
+    }
+
+    @Override
+    public Film createFilm(Film film) {
+        Film created = filmDbStorage.createFilm(film);
+        AfterCommit.run(() -> columns.add(created));
+        return created;
+    }
+
+    @Override
+    public List<Film> createFilms(List<Film> films) {
+        List<Film> created = filmDbStorage.createFilms(films);
+        AfterCommit.run(() -> created.forEach(columns::add));
+        return created;
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        Film updated = filmDbStorage.updateFilm(film);
+        AfterCommit.run(() -> columns.update(updated));
+        return updated;
+    }
+
+    @Override
+    public Film getFilmById(int id) {
+        Film film = columns.get(id);
+        if (film == null) {
+            throw new NotFoundException("Фильм с id = " + id + " не найден.");
+        }
+        return film;
+    }
+
+    @Override
+    public boolean isFilmPresent(int id) {
+        return columns.contains(id);
+    }
+
+    @Override
+    public long getFilmVersion(int id) {
+        return columns.getVersion(id)
+                .orElseThrow(() -> new NotFoundException("Фильм с id = " + id + " не найден."));
+    }
+
+    @Override
+    public long getFilmsVersion() {
+        return columns.getFilmsVersion();
+    }
+
+    @Override
+    public boolean addLikeToFilm(int id, int userId) {
+        return filmDbStorage.addLikeToFilm(id, userId);
+    }
+
+    @Override
+    public boolean deleteLike(int id, int userId) {
+        return filmDbStorage.deleteLike(id, userId);
+    }
+
+    @Override
+    public Film likeFilm(int id, int userId) {
+        filmDbStorage.addLikeToFilm(id, userId);
+        return getFilmById(id);
+    }
+
+    @Override
+    public Film unlikeFilm(int id, int userId) {
+        filmDbStorage.deleteLike(id, userId);
+        return getFilmById(id);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count) {
+        return columns.get(popularityIndex.getTopFilmIds(count));
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId) {
+        return columns.get(categoryPopularityIndex.getTopFilmIds(genreId, mpaId, count));
+    }
+
+    @Override
+    public List<Film> getTrendingFilms(TrendingWindow window, int count) {
+        return columns.get(trendingIndex.getTopFilmIds(window, count));
+    }
+
+    @Override
+    public List<Film> getRecommendations(int userId, int count) {
+        return getFilmsByIds(likeMatrix.recommendFilms(userId, count));
+    }
+
+    @Override
+    public List<Film> searchFilms(String query, int limit) {
+        return getFilmsByIds(searchIndex.search(query, limit));
+    }
+
+    private List<Film> getFilmsByIds(int[] ids) {
+        return columns.get(Arrays.stream(ids).boxed().collect(Collectors.toList()));
+    }
+}
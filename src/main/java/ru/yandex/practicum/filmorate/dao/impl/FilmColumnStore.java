@@ -0,0 +1,366 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.cache.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.dao.index.LikeListener;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import javax.annotation.PostConstruct;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Каталог фильмов в памяти по колонкам: у каждого поля свой массив, строка фильма — общий номер в этих массивах.
+ * Числовые поля, дата выпуска в днях от эпохи, маска жанров и версия лежат в массивах примитивов,
+ * название и описание — в UTF-8 вне кучи, в колонках только их смещения и длины.
+ * Изменённый текст пишется на место прежнего, если помещается, а когда освобождённые байты занимают
+ * больше половины области, живой текст переписывается в новую область.
+ * Объекты {@link Film} собираются при чтении, жанры и рейтинг берутся общими экземплярами из справочников,
+ * число лайков — из {@link LikeMatrix}.
+ * Строится из FILMS и FILM_GENRE при старте, дальше обновляется после каждой записи в базу.
+ * Версии фильмов растут здесь так же, как в базе, кроме отложенной записи лайков:
+ * база увеличивает версию один раз за сброс, а здесь она растёт на каждый лайк, оставаясь монотонной.
+ * Лайк увеличивает версию атомарно под блокировкой на чтение и не ждёт других лайков;
+ * блокировку на запись берут только изменения самих колонок.
+ */
+@Slf4j
+@Component
+@Profile(ColumnarFilmStorage.PROFILE)
+@RequiredArgsConstructor
+public class FilmColumnStore implements LikeListener {
+
+    private static final String LOAD_SQL = "SELECT f.FILM_ID, f.TITLE, f.DESCRIPTION, f.RELEASE_DATE, f.DURATION,\n" +
+            "f.RATING_ID, f.VERSION, fg.GENRE_ID\n" +
+            "FROM PUBLIC.FILMS f LEFT JOIN PUBLIC.FILM_GENRE fg ON f.FILM_ID = fg.FILM_ID\n" +
+            "ORDER BY f.FILM_ID, fg.GENRE_ID;";
+    private static final int INITIAL_CAPACITY = 1024;
+    // Длина колонки описания для NULL в базе
+    private static final int NULL_TEXT = -1;
+    // Версии меняются лайками параллельно под блокировкой на чтение, поэтому читаются и растут атомарно
+    private static final VarHandle VERSIONS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache referenceDataCache;
+    private final LikeMatrix likeMatrix;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private OffHeapTextRegion text = new OffHeapTextRegion();
+
+    private int size;
+    private int[] ids;
+    private int[] durations;
+    private int[] mpaIds;
+    private int[] releaseDays;
+    private long[] genreMasks;
+    private long[] versions;
+    private int[] titleOffsets;
+    private int[] titleLengths;
+    private int[] descriptionOffsets;
+    private int[] descriptionLengths;
+    // Номер строки + 1 по id фильма, 0 — фильма нет
+    private int[] rowById;
+    // Число фильмов плюс сумма их версий, как в FilmDbStorage.getFilmsVersion
+    private final AtomicLong filmsVersion = new AtomicLong();
+
+    @PostConstruct
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            jdbcTemplate.query(LOAD_SQL, rs -> {
+                int filmId = rs.getInt("FILM_ID");
+                if (size == 0 || ids[size - 1] != filmId) {
+                    int row = append(filmId);
+                    write(row, rs.getString("TITLE"), rs.getString("DESCRIPTION"),
+                            rs.getDate("RELEASE_DATE").toLocalDate(), rs.getInt("DURATION"), rs.getInt("RATING_ID"), 0);
+                    versions[row] = rs.getLong("VERSION");
+                    filmsVersion.addAndGet(1 + versions[row]);
+                }
+                int genreId = rs.getInt("GENRE_ID");
+                if (!rs.wasNull()) {
+                    genreMasks[size - 1] |= ReferenceDataCache.genreBit(genreId);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Колоночный каталог фильмов загружен: фильмов {}, текста вне кучи {} байт", size, text.size());
+    }
+
+    /**
+     * Добавляет сохранённый фильм, жанры и рейтинг которого уже сверены со справочниками.
+     */
+    public void add(Film film) {
+        lock.writeLock().lock();
+        try {
+            int row = append(film.getId());
+            write(row, film);
+            versions[row] = film.getVersion();
+            filmsVersion.addAndGet(1 + film.getVersion());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void update(Film film) {
+        lock.writeLock().lock();
+        try {
+            int row = row(film.getId());
+            if (row < 0) {
+                row = append(film.getId());
+                filmsVersion.incrementAndGet();
+            }
+            write(row, film);
+            versions[row]++;
+            filmsVersion.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onLikeAdded(int filmId, int userId) {
+        bumpVersion(filmId);
+    }
+
+    @Override
+    public void onLikeRemoved(int filmId, int userId) {
+        bumpVersion(filmId);
+    }
+
+    public boolean contains(int filmId) {
+        lock.readLock().lock();
+        try {
+            return row(filmId) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public OptionalLong getVersion(int filmId) {
+        lock.readLock().lock();
+        try {
+            int row = row(filmId);
+            return row < 0 ? OptionalLong.empty() : OptionalLong.of(version(row));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getFilmsVersion() {
+        return filmsVersion.get();
+    }
+
+    /**
+     * @return фильм или null, если его нет
+     */
+    public Film get(int filmId) {
+        lock.readLock().lock();
+        try {
+            int row = row(filmId);
+            return row < 0 ? null : makeFilm(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Фильмы с переданными id в том же порядке, отсутствующие пропускаются.
+     */
+    public List<Film> get(List<Integer> filmIds) {
+        List<Film> films = new ArrayList<>(filmIds.size());
+        lock.readLock().lock();
+        try {
+            for (int filmId : filmIds) {
+                int row = row(filmId);
+                if (row >= 0) {
+                    films.add(makeFilm(row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return films;
+    }
+
+    /**
+     * До limit фильмов с id больше after по возрастанию id.
+     */
+    public List<Film> getPage(int after, int limit) {
+        List<Film> films = new ArrayList<>(Math.min(limit, INITIAL_CAPACITY));
+        lock.readLock().lock();
+        try {
+            int from = after < 0 ? 0 : (int) Math.min((long) after + 1, rowById.length);
+            for (int filmId = from; filmId < rowById.length && films.size() < limit; filmId++) {
+                if (rowById[filmId] != 0) {
+                    films.add(makeFilm(rowById[filmId] - 1));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return films;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return объём текста вне кучи в байтах, включая ещё не освобождённый перезаписанный
+     */
+    int textSize() {
+        lock.readLock().lock();
+        try {
+            return text.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void bumpVersion(int filmId) {
+        lock.readLock().lock();
+        try {
+            int row = row(filmId);
+            if (row >= 0) {
+                VERSIONS.getAndAdd(versions, row, 1L);
+                filmsVersion.incrementAndGet();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long version(int row) {
+        return (long) VERSIONS.getVolatile(versions, row);
+    }
+
+    private Film makeFilm(int row) {
+        return Film.builder()
+                .id(ids[row])
+                .name(text.read(titleOffsets[row], titleLengths[row]))
+                .description(descriptionLengths[row] == NULL_TEXT
+                        ? null
+                        : text.read(descriptionOffsets[row], descriptionLengths[row]))
+                .releaseDate(LocalDate.ofEpochDay(releaseDays[row]))
+                .duration(durations[row])
+                .mpa(referenceDataCache.getMpa(mpaIds[row]).orElseThrow())
+                .genres(referenceDataCache.getGenres(genreMasks[row]))
+                .version(version(row))
+                .likes(likeMatrix.getLikeCount(ids[row]))
+                .build();
+    }
+
+    private void write(int row, Film film) {
+        long genreMask = 0;
+        for (Genre genre : film.getGenres()) {
+            genreMask |= ReferenceDataCache.genreBit(genre.getId());
+        }
+        write(row, film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration(),
+                film.getMpa().getId(), genreMask);
+    }
+
+    private void write(int row, String title, String description, LocalDate releaseDate, int duration, int mpaId,
+                       long genreMask) {
+        byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+        titleOffsets[row] = text.write(titleOffsets[row], titleLengths[row], titleBytes);
+        titleLengths[row] = titleBytes.length;
+        if (description == null) {
+            if (descriptionLengths[row] != NULL_TEXT) {
+                text.release(descriptionLengths[row]);
+            }
+            descriptionLengths[row] = NULL_TEXT;
+        } else {
+            byte[] descriptionBytes = description.getBytes(StandardCharsets.UTF_8);
+            int oldLength = descriptionLengths[row] == NULL_TEXT ? 0 : descriptionLengths[row];
+            descriptionOffsets[row] = text.write(descriptionOffsets[row], oldLength, descriptionBytes);
+            descriptionLengths[row] = descriptionBytes.length;
+        }
+        releaseDays[row] = (int) releaseDate.toEpochDay();
+        durations[row] = duration;
+        mpaIds[row] = mpaId;
+        genreMasks[row] = genreMask;
+        if (text.needsCompaction()) {
+            compactText();
+        }
+    }
+
+    /**
+     * Переписывает живой текст всех строк в новую область, освобождая байты перезаписанного текста.
+     */
+    private void compactText() {
+        int before = text.size();
+        OffHeapTextRegion compacted = new OffHeapTextRegion();
+        for (int row = 0; row < size; row++) {
+            titleOffsets[row] = compacted.copy(text, titleOffsets[row], titleLengths[row]);
+            if (descriptionLengths[row] != NULL_TEXT) {
+                descriptionOffsets[row] = compacted.copy(text, descriptionOffsets[row], descriptionLengths[row]);
+            }
+        }
+        text = compacted;
+        log.debug("Текст колоночного каталога перестроен: {} байт вместо {}", text.size(), before);
+    }
+
+    private int append(int filmId) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            mpaIds = Arrays.copyOf(mpaIds, capacity);
+            releaseDays = Arrays.copyOf(releaseDays, capacity);
+            genreMasks = Arrays.copyOf(genreMasks, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            titleOffsets = Arrays.copyOf(titleOffsets, capacity);
+            titleLengths = Arrays.copyOf(titleLengths, capacity);
+            descriptionOffsets = Arrays.copyOf(descriptionOffsets, capacity);
+            descriptionLengths = Arrays.copyOf(descriptionLengths, capacity);
+        }
+        if (filmId >= rowById.length) {
+            rowById = Arrays.copyOf(rowById, Math.max(filmId + 1, rowById.length * 2));
+        }
+        int row = size++;
+        ids[row] = filmId;
+        rowById[filmId] = row + 1;
+        return row;
+    }
+
+    private int row(int filmId) {
+        return filmId >= 0 && filmId < rowById.length ? rowById[filmId] - 1 : -1;
+    }
+
+    private void clear() {
+        size = 0;
+        ids = new int[INITIAL_CAPACITY];
+        durations = new int[INITIAL_CAPACITY];
+        mpaIds = new int[INITIAL_CAPACITY];
+        releaseDays = new int[INITIAL_CAPACITY];
+        genreMasks = new long[INITIAL_CAPACITY];
+        versions = new long[INITIAL_CAPACITY];
+        titleOffsets = new int[INITIAL_CAPACITY];
+        titleLengths = new int[INITIAL_CAPACITY];
+        descriptionOffsets = new int[INITIAL_CAPACITY];
+        descriptionLengths = new int[INITIAL_CAPACITY];
+        rowById = new int[INITIAL_CAPACITY];
+        filmsVersion.set(0);
+        text.clear();
+    }
+}
@@ -1,28 +1,76 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
 import lombok.AllArgsConstructor;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dao.FilmStorage;
 import ru.yandex.practicum.filmorate.dao.GenreStorage;
+import ru.yandex.practicum.filmorate.dao.cache.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.dao.index.CategoryPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmFilterIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.dao.index.LikeListener;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.dao.index.TrendingFilmsIndex;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
 
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 @AllArgsConstructor
 public class FilmDbStorage implements FilmStorage {
 
+    private static final String INSERT_FILM_SQL = "INSERT INTO PUBLIC.FILMS\n" +
+            "(FILM_ID, TITLE, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID)\n" +
+            "VALUES(?, ?, ?, ?, ?, ?);";
+    private static final String UPDATE_FILM_SQL = "UPDATE PUBLIC.FILMS SET\n" +
+            "TITLE = ?, DESCRIPTION = ?, RELEASE_DATE = ?, DURATION = ?, RATING_ID = ?, VERSION = VERSION + 1\n" +
+            "WHERE FILM_ID = ?;";
+    private static final String INSERT_LIKE_SQL = "INSERT INTO PUBLIC.LIKES (FILM_ID, USER_ID)\n" +
+            "SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM PUBLIC.LIKES WHERE FILM_ID = ? AND USER_ID = ?);";
+    private static final String DELETE_LIKE_SQL = "DELETE FROM PUBLIC.LIKES WHERE FILM_ID = ? AND USER_ID = ?;";
+    static final String BUMP_FILM_VERSION_SQL = "UPDATE PUBLIC.FILMS SET VERSION = VERSION + 1 WHERE FILM_ID = ?;";
+    // Та же запись версии, но сразу возвращает строку фильма, чтобы ответ на лайк не перечитывал фильм
+    private static final String BUMP_AND_GET_FILM_SQL = "SELECT * FROM FINAL TABLE\n" +
+            "(UPDATE PUBLIC.FILMS SET VERSION = VERSION + 1 WHERE FILM_ID = ?);";
+    private static final String GET_FILM_AND_CHECK_USER_SQL = "SELECT f.*,\n" +
+            "EXISTS (SELECT 1 FROM PUBLIC.USERS WHERE USER_ID = ?) AS USER_PRESENT\n" +
+            "FROM PUBLIC.FILMS f WHERE f.FILM_ID = ?;";
+    private static final String CHECK_FILM_AND_USER_SQL = "SELECT\n" +
+            "EXISTS (SELECT 1 FROM PUBLIC.FILMS WHERE FILM_ID = ?) AS FILM_PRESENT,\n" +
+            "EXISTS (SELECT 1 FROM PUBLIC.USERS WHERE USER_ID = ?) AS USER_PRESENT;";
+    private static final String INSERT_FILM_GENRE_SQL = "INSERT INTO PUBLIC.FILM_GENRE (FILM_ID, GENRE_ID) VALUES(?, ?)";
+
     private final JdbcTemplate jdbcTemplate;
     private final GenreStorage genreStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final ReferenceDataCache referenceDataCache;
+    private final FilmIdAllocator idAllocator;
+    private final LikeWriteBuffer likeWriteBuffer;
+    private final LikeMatrix likeMatrix;
+    private final FilmSearchIndex searchIndex;
+    private final FilmFilterIndex filterIndex;
+    private final TrendingFilmsIndex trendingIndex;
+    private final CategoryPopularityIndex categoryPopularityIndex;
+    private final ListVersions listVersions;
+    private final List<LikeListener> likeListeners;
 
     @Override
     public List<Film> getFilms() {
@@ -33,41 +81,134 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
+    public CursorPage<Film> getFilmsPage(int after, int limit) {
+        String sql = "SELECT * FROM PUBLIC.FILMS f JOIN RATINGS r ON f.RATING_ID = r.RATING_ID\n" +
+                "WHERE f.FILM_ID > ? ORDER BY f.FILM_ID LIMIT ?;";
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), after, limit + 1);
+        Integer nextCursor = null;
+        if (films.size() > limit) {
+            films = new ArrayList<>(films.subList(0, limit));
+            nextCursor = films.get(limit - 1).getId();
+        }
+        if (!films.isEmpty()) {
+            genreStorage.attachGenreToFilm(films);
+        }
+        return new CursorPage<>(films, nextCursor);
+    }
+
+    @Override
+    public CursorPage<Film> findFilms(FilmFilter filter, int after, int limit) {
+        if (filter.isSortByPopularity()) {
+            return new CursorPage<>(getFilmsByIds(filterIndex.find(filter, after, limit)), null);
+        }
+        int[] ids = filterIndex.find(filter, after, limit + 1);
+        Integer nextCursor = null;
+        if (ids.length > limit) {
+            ids = Arrays.copyOf(ids, limit);
+            nextCursor = ids[limit - 1];
+        }
+        return new CursorPage<>(getFilmsByIds(ids), nextCursor);
+    }
+
+    @Override
+    public void streamFilms(Consumer<Film> consumer) {
+        String sql = "SELECT f.*, r.RATING_NAME, fg.GENRE_ID FROM PUBLIC.FILMS f\n" +
+                "JOIN RATINGS r ON f.RATING_ID = r.RATING_ID\n" +
+                "LEFT JOIN PUBLIC.FILM_GENRE fg ON f.FILM_ID = fg.FILM_ID\n" +
+                "ORDER BY f.FILM_ID, fg.GENRE_ID;";
+        FilmRowCollector collector = new FilmRowCollector(consumer);
+        jdbcTemplate.query(sql, collector);
+        collector.finish();
+    }
+
+    @Override
+    @Transactional
     public Film createFilm(Film film) {
-        film.setId(getId());
-        int mpaId = film.getMpa().getId();
-        String sql = "INSERT INTO PUBLIC.FILMS\n" +
-                "(FILM_ID, TITLE, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID)\n" +
-                "VALUES(?, ?, ?, ?, ?, ?);";
-        jdbcTemplate.update(sql, film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
-                film.getDuration(), mpaId);
-        film.setMpa(makeMpa(mpaId));
-        if (film.getGenres() != null) {
-            updateFilmGenre(film);
-            Set<Genre> genres = new HashSet<>(film.getGenres());
-            film.setGenres(new LinkedHashSet<>());
+        film.setMpa(makeMpa(film.getMpa().getId()));
+        film.setGenres(makeGenres(film.getGenres()));
+        film.setId(idAllocator.nextId());
+        jdbcTemplate.update(INSERT_FILM_SQL, film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), film.getMpa().getId());
+        insertFilmGenres(film.getId(), film.getGenres());
+        listVersions.filmsChanged(1);
+        AfterCommit.run(() -> {
+            popularityIndex.addFilm(film.getId());
+            indexFilm(film);
+        });
+        return film;
+    }
+
+    @Override
+    @Transactional
+    public List<Film> createFilms(List<Film> films) {
+        int[] ids = idAllocator.nextIds(films.size());
+        List<Object[]> filmRows = new ArrayList<>(films.size());
+        List<Object[]> genreRows = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            film.setId(ids[i]);
+            film.setMpa(makeMpa(film.getMpa().getId()));
+            Set<Genre> genres = makeGenres(film.getGenres());
+            film.setGenres(genres);
+            filmRows.add(new Object[]{film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                    film.getDuration(), film.getMpa().getId()});
             for (Genre genre : genres) {
-                Optional<Genre> genreById = genreStorage.getGenreById(genre.getId());
-                genreById.ifPresent(film::addGenre);
+                genreRows.add(new Object[]{film.getId(), genre.getId()});
             }
-        } else {
-            film.setGenres(new LinkedHashSet<>());
         }
-        return film;
+        jdbcTemplate.batchUpdate(INSERT_FILM_SQL, filmRows);
+        if (!genreRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_FILM_GENRE_SQL, genreRows);
+        }
+        listVersions.filmsChanged(films.size());
+        AfterCommit.run(() -> {
+            for (Film film : films) {
+                popularityIndex.addFilm(film.getId());
+                indexFilm(film);
+            }
+        });
+        return films;
     }
 
+    /**
+     * Обновляет фильм в одной транзакции. Жанры меняются по разнице со старым набором:
+     * добавляются только новые и удаляются только убранные. Старый набор берётся из маски жанров в памяти,
+     * а не из FILM_GENRE. Если жанры не переданы, остаются прежние.
+     * Ответ собирается из переданных данных и справочников без повторного чтения фильма.
+     */
     @Override
+    @Transactional
     public Film updateFilm(Film film) {
-        int mpaId = film.getMpa().getId();
-        String sql = "UPDATE PUBLIC.FILMS SET " +
-                "TITLE = ?, DESCRIPTION = ?, RELEASE_DATE = ?, DURATION = ?, RATING_ID = ?\n" +
-                "WHERE FILM_ID = ?;";
-        jdbcTemplate.update(sql, film.getName(), film.getDescription(), film.getReleaseDate(),
-                film.getDuration(), mpaId, film.getId());
-        film.setMpa(makeMpa(mpaId));
-        updateFilmGenre(film);
-        genreStorage.attachGenreToFilm(List.of(film));
-
+        film.setMpa(makeMpa(film.getMpa().getId()));
+        Set<Genre> genres = film.getGenres() == null ? null : makeGenres(film.getGenres());
+        film.setLikes(likeMatrix.getLikeCount(film.getId()));
+        int updated = jdbcTemplate.update(UPDATE_FILM_SQL, film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), film.getMpa().getId(), film.getId());
+        if (updated == 0) {
+            throw new NotFoundException("Фильм " + film.getId() + " не найден.");
+        }
+        listVersions.filmsChanged(1);
+        long currentMask = categoryPopularityIndex.getGenreMask(film.getId());
+        if (genres == null) {
+            film.setGenres(referenceDataCache.getGenres(currentMask));
+            AfterCommit.run(() -> indexFilm(film));
+            return film;
+        }
+        long newMask = genres.stream()
+                .mapToLong(genre -> ReferenceDataCache.genreBit(genre.getId()))
+                .reduce(0, (mask, bit) -> mask | bit);
+        List<Object[]> removed = new ArrayList<>();
+        for (long bits = currentMask & ~newMask; bits != 0; bits &= bits - 1) {
+            removed.add(new Object[]{film.getId(), Long.numberOfTrailingZeros(bits)});
+        }
+        if (!removed.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM PUBLIC.FILM_GENRE WHERE FILM_ID = ? AND GENRE_ID = ?;", removed);
+        }
+        insertFilmGenres(film.getId(), genres.stream()
+                .filter(genre -> (currentMask & ReferenceDataCache.genreBit(genre.getId())) == 0)
+                .collect(Collectors.toList()));
+        film.setGenres(genres);
+        AfterCommit.run(() -> indexFilm(film));
         return film;
     }
 
@@ -93,66 +234,235 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
-    public void addLikeToFilm(int id, int userId) {
-        String sql = "SELECT * FROM PUBLIC.LIKES WHERE FILM_ID = ? AND USER_ID = ?;";
-        SqlRowSet set = jdbcTemplate.queryForRowSet(sql, id, userId);
-        if (!set.next()) {
-            sql = "INSERT INTO PUBLIC.LIKES (FILM_ID, USER_ID) VALUES(?, ?)";
-            jdbcTemplate.update(sql, id, userId);
+    public long getFilmVersion(int id) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT VERSION FROM PUBLIC.FILMS WHERE FILM_ID = ?;",
+                Long.class, id);
+        if (versions.isEmpty()) {
+            throw new NotFoundException("Фильм с id = " + id + " не найден.");
         }
+        return versions.get(0);
+    }
+
+    /**
+     * Сумма числа фильмов и их версий: фильмы не удаляются, поэтому
+     * каждое добавление или изменение фильма увеличивает её на единицу. Хранится в памяти, см. {@link ListVersions}.
+     */
+    @Override
+    public long getFilmsVersion() {
+        return listVersions.getFilmsVersion();
     }
 
     @Override
-    public void deleteLike(int id, int userId) {
-        String sql = "SELECT * FROM PUBLIC.LIKES WHERE FILM_ID = ? AND USER_ID = ?;";
-        SqlRowSet set = jdbcTemplate.queryForRowSet(sql, id, userId);
-        if (set.next()) {
-            sql = "DELETE FROM PUBLIC.LIKES WHERE FILM_ID = ? AND USER_ID = ?;";
-            jdbcTemplate.update(sql, id, userId);
+    @Transactional
+    public boolean addLikeToFilm(int id, int userId) {
+        if (likeWriteBuffer.isEnabled()) {
+            checkFilmAndUser(id, userId);
+            return likeWriteBuffer.like(id, userId);
         }
+        return insertLike(id, userId) != null;
     }
 
     @Override
-    public List<Film> getPopularFilms(int count) {
-        String sql = "SELECT * FROM PUBLIC.FILMS f\n" +
-                "JOIN RATINGS r ON f.RATING_ID = r.RATING_ID\n" +
-                "WHERE FILM_ID IN (SELECT FILM_ID FROM PUBLIC.LIKES GROUP BY FILM_ID ORDER BY COUNT(USER_ID) DESC);";
-        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs));
-        if (!films.isEmpty()) {
-            genreStorage.attachGenreToFilm(films);
-            return films;
-        } else {
-            return getFilms();
+    @Transactional
+    public boolean deleteLike(int id, int userId) {
+        if (likeWriteBuffer.isEnabled()) {
+            checkFilmAndUser(id, userId);
+            return likeWriteBuffer.unlike(id, userId);
+        }
+        if (removeLike(id, userId) == null) {
+            checkFilmAndUser(id, userId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Строку фильма возвращает сама запись версии, жанры и рейтинг берутся из индексов и справочников в памяти.
+     * Если лайк уже был или лайки пишутся отложенно, фильм читается одним запросом вместе с проверкой пользователя.
+     */
+    @Override
+    @Transactional
+    public Film likeFilm(int id, int userId) {
+        if (likeWriteBuffer.isEnabled()) {
+            Film film = getFilmAndCheckUser(id, userId);
+            likeWriteBuffer.like(id, userId);
+            return withGenresAndLikes(film);
+        }
+        Film film = insertLike(id, userId);
+        return withGenresAndLikes(film != null ? film : getFilmAndCheckUser(id, userId));
+    }
+
+    @Override
+    @Transactional
+    public Film unlikeFilm(int id, int userId) {
+        if (likeWriteBuffer.isEnabled()) {
+            Film film = getFilmAndCheckUser(id, userId);
+            likeWriteBuffer.unlike(id, userId);
+            return withGenresAndLikes(film);
+        }
+        Film film = removeLike(id, userId);
+        return withGenresAndLikes(film != null ? film : getFilmAndCheckUser(id, userId));
+    }
+
+    /**
+     * @return фильм после записи лайка или null, если лайк уже был
+     */
+    private Film insertLike(int id, int userId) {
+        boolean added;
+        try {
+            added = jdbcTemplate.update(INSERT_LIKE_SQL, id, userId, id, userId) > 0;
+        } catch (DuplicateKeyException e) {
+            // Такой же лайк успел вставить параллельный запрос
+            added = false;
+        } catch (DataIntegrityViolationException e) {
+            checkFilmAndUser(id, userId);
+            throw e;
+        }
+        if (!added) {
+            return null;
+        }
+        Film film = bumpVersion(id);
+        AfterCommit.run(() -> likeListeners.forEach(listener -> listener.onLikeAdded(id, userId)));
+        return film;
+    }
+
+    /**
+     * @return фильм после удаления лайка или null, если лайка не было
+     */
+    private Film removeLike(int id, int userId) {
+        if (jdbcTemplate.update(DELETE_LIKE_SQL, id, userId) == 0) {
+            return null;
         }
+        Film film = bumpVersion(id);
+        AfterCommit.run(() -> likeListeners.forEach(listener -> listener.onLikeRemoved(id, userId)));
+        return film;
     }
 
-    private void updateFilmGenre(Film film) {
-        if (film.getGenres() != null) {
-            String sqlDelete = "DELETE FROM PUBLIC.FILM_GENRE WHERE FILM_ID = ?;";
-            jdbcTemplate.update(sqlDelete, film.getId());
-            Set<Genre> genreSet = new HashSet<>(film.getGenres());
-            ArrayList<Genre> genres = new ArrayList<>(genreSet);
-            jdbcTemplate.batchUpdate(
-                    "INSERT INTO PUBLIC.FILM_GENRE (FILM_ID, GENRE_ID) VALUES(?, ?)",
-                    new BatchPreparedStatementSetter() {
-                        public void setValues(PreparedStatement ps, int i)
-                                throws SQLException {
-                            ps.setInt(1, film.getId());
-                            ps.setInt(2, genres.get(i).getId());
-                        }
+    private Film bumpVersion(int id) {
+        Film film = jdbcTemplate.queryForObject(BUMP_AND_GET_FILM_SQL, (rs, rowNum) -> makeFilm(rs), id);
+        listVersions.filmsChanged(1);
+        return film;
+    }
 
-                        public int getBatchSize() {
-                            return genreSet.size();
-                        }
-                    });
+    private Film getFilmAndCheckUser(int id, int userId) {
+        SqlRowSet set = jdbcTemplate.queryForRowSet(GET_FILM_AND_CHECK_USER_SQL, userId, id);
+        if (!set.next()) {
+            throw new NotFoundException("Фильм " + id + " не найден.");
+        }
+        if (!set.getBoolean("USER_PRESENT")) {
+            throw new NotFoundException("Пользователь " + userId + " не найден.");
         }
+        return Film.builder()
+                .id(id)
+                .name(set.getString("TITLE"))
+                .description(set.getString("DESCRIPTION"))
+                .releaseDate(set.getDate("RELEASE_DATE").toLocalDate())
+                .duration(set.getInt("DURATION"))
+                .version(set.getLong("VERSION"))
+                .mpa(makeMpa(set.getInt("RATING_ID")))
+                .build();
+    }
+
+    /**
+     * Добавляет жанры из индекса в памяти. Число лайков проставляется после фиксации,
+     * когда слушатели уже обновили матрицу лайков.
+     */
+    private Film withGenresAndLikes(Film film) {
+        film.setGenres(referenceDataCache.getGenres(categoryPopularityIndex.getGenreMask(film.getId())));
+        AfterCommit.run(() -> film.setLikes(likeMatrix.getLikeCount(film.getId())));
+        return film;
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count) {
+        return getFilmsByIds(popularityIndex.getTopFilmIds(count));
     }
 
-    private int getId() {
-        String sqlGetId = "SELECT COUNT(FILM_ID) AS ID FROM PUBLIC.FILMS;";
-        SqlRowSet set = jdbcTemplate.queryForRowSet(sqlGetId);
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId) {
+        return getFilmsByIds(categoryPopularityIndex.getTopFilmIds(genreId, mpaId, count));
+    }
+
+    @Override
+    public List<Film> getTrendingFilms(TrendingWindow window, int count) {
+        return getFilmsByIds(trendingIndex.getTopFilmIds(window, count));
+    }
+
+    @Override
+    public List<Film> searchFilms(String query, int limit) {
+        return getFilmsByIds(searchIndex.search(query, limit));
+    }
+
+    @Override
+    public List<Film> getRecommendations(int userId, int count) {
+        return getFilmsByIds(likeMatrix.recommendFilms(userId, count));
+    }
+
+    private void checkFilmAndUser(int id, int userId) {
+        SqlRowSet set = jdbcTemplate.queryForRowSet(CHECK_FILM_AND_USER_SQL, id, userId);
         set.next();
-        return set.getInt(1) + 1;
+        if (!set.getBoolean("FILM_PRESENT")) {
+            throw new NotFoundException("Фильм " + id + " не найден.");
+        }
+        if (!set.getBoolean("USER_PRESENT")) {
+            throw new NotFoundException("Пользователь " + userId + " не найден.");
+        }
+    }
+
+    private List<Film> getFilmsByIds(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
+        String sql = "SELECT * FROM PUBLIC.FILMS f JOIN RATINGS r ON f.RATING_ID = r.RATING_ID\n" +
+                "WHERE FILM_ID IN (" + inSql + ");";
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), ids.toArray());
+        genreStorage.attachGenreToFilm(films);
+        Map<Integer, Film> filmById = films.stream().collect(Collectors.toMap(Film::getId, Function.identity()));
+        return ids.stream()
+                .map(filmById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private List<Film> getFilmsByIds(int[] ids) {
+        return getFilmsByIds(Arrays.stream(ids).boxed().collect(Collectors.toList()));
+    }
+
+    /**
+     * Обновляет поисковый индекс и индексы фильтрации по сохранённому фильму.
+     * Вызывается после фиксации транзакции.
+     */
+    private void indexFilm(Film film) {
+        searchIndex.index(film.getId(), film.getName(), film.getDescription());
+        List<Integer> genreIds = film.getGenres().stream().map(Genre::getId).collect(Collectors.toList());
+        filterIndex.index(film.getId(), genreIds, film.getMpa().getId(), film.getReleaseDate());
+        categoryPopularityIndex.index(film.getId(), genreIds, film.getMpa().getId());
+    }
+
+    private void insertFilmGenres(int filmId, Collection<Genre> genres) {
+        if (genres.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_FILM_GENRE_SQL, genres.stream()
+                .map(genre -> new Object[]{filmId, genre.getId()})
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Заменяет переданные жанры общим набором из справочника: без повторов, упорядоченным по id.
+     */
+    private Set<Genre> makeGenres(Collection<Genre> genres) {
+        long genreMask = 0;
+        if (genres != null) {
+            for (Genre genre : genres) {
+                int id = genre.getId();
+                referenceDataCache.getGenre(id)
+                        .orElseThrow(() -> new NotFoundException("Жанр с id = " + id + " не найден."));
+                genreMask |= ReferenceDataCache.genreBit(id);
+            }
+        }
+        return referenceDataCache.getGenres(genreMask);
     }
 
     private Film makeFilm(ResultSet rs) {
@@ -164,10 +474,9 @@ public class FilmDbStorage implements FilmStorage {
                     .description(rs.getString("DESCRIPTION"))
                     .releaseDate(rs.getDate("RELEASE_DATE").toLocalDate())
                     .duration(rs.getInt("DURATION"))
-                    .mpa(new Mpa(
-                            rs.getInt("RATING_ID"),
-                            rs.getString("RATING_NAME")
-                    ))
+                    .version(rs.getLong("VERSION"))
+                    .likes(likeMatrix.getLikeCount(id))
+                    .mpa(makeMpa(rs.getInt("RATING_ID")))
                     .build();
             return film;
         } catch (SQLException e) {
@@ -175,11 +484,40 @@ public class FilmDbStorage implements FilmStorage {
         }
     }
 
+    private class FilmRowCollector implements RowCallbackHandler {
+        private final Consumer<Film> consumer;
+        private Film current;
+        private long genreMask;
+
+        FilmRowCollector(Consumer<Film> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            int filmId = rs.getInt("FILM_ID");
+            if (current == null || current.getId() != filmId) {
+                finish();
+                current = makeFilm(rs);
+                genreMask = 0;
+            }
+            int genreId = rs.getInt("GENRE_ID");
+            if (!rs.wasNull()) {
+                genreMask |= ReferenceDataCache.genreBit(genreId);
+            }
+        }
+
+        void finish() {
+            if (current != null) {
+                current.setGenres(referenceDataCache.getGenres(genreMask));
+                consumer.accept(current);
+                current = null;
+            }
+        }
+    }
+
     private Mpa makeMpa(int id) {
-        String sql = "SELECT RATING_NAME FROM PUBLIC.RATINGS WHERE RATING_ID = ?;";
-        SqlRowSet set = jdbcTemplate.queryForRowSet(sql, id);
-        set.next();
-        String mpaName = set.getString("RATING_NAME");
-        return new Mpa(id, mpaName);
+        return referenceDataCache.getMpa(id)
+                .orElseThrow(() -> new NotFoundException("Рейтинг с id = " + id + " не найден."));
     }
 }
\ No newline at end of file
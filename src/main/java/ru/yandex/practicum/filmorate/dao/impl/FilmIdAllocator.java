@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Выдаёт id фильмов из последовательности FILM_ID_SEQ.
+ * Каждое обращение к последовательности резервирует блок из {@link #BLOCK_SIZE} id,
+ * которые затем раздаются локально без запросов к базе.
+ */
+@Component
+@RequiredArgsConstructor
+public class FilmIdAllocator {
+
+    // Должен совпадать с INCREMENT BY последовательности в schema.sql
+    static final int BLOCK_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private int nextId;
+    private int blockEnd;
+
+    public synchronized int nextId() {
+        if (nextId >= blockEnd) {
+            Integer blockStart = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR PUBLIC.FILM_ID_SEQ;", Integer.class);
+            nextId = blockStart;
+            blockEnd = blockStart + BLOCK_SIZE;
+        }
+        return nextId++;
+    }
+
+    /**
+     * Выдаёт count id: сначала остаток текущего блока, затем новые блоки,
+     * которые резервируются одним запросом к последовательности.
+     */
+    public synchronized int[] nextIds(int count) {
+        int[] ids = new int[count];
+        int filled = 0;
+        while (filled < count && nextId < blockEnd) {
+            ids[filled++] = nextId++;
+        }
+        if (filled < count) {
+            int blocks = (count - filled + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            List<Integer> blockStarts = jdbcTemplate.queryForList(
+                    "SELECT NEXT VALUE FOR PUBLIC.FILM_ID_SEQ FROM SYSTEM_RANGE(1, ?);", Integer.class, blocks);
+            for (int blockStart : blockStarts) {
+                nextId = blockStart;
+                blockEnd = blockStart + BLOCK_SIZE;
+                while (filled < count && nextId < blockEnd) {
+                    ids[filled++] = nextId++;
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,348 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dao.index.LikeListener;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.model.LikeBufferStats;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Отложенная запись лайков. События копятся в ограниченном буфере, где по каждой паре (фильм, пользователь)
+ * хранится только последнее состояние, и сбрасываются в LIKES пакетами по размеру буфера или по таймеру.
+ * Лайк и последующий дизлайк схлопываются в один идемпотентный DELETE, INSERT для такой пары не выполняется.
+ * Версия каждого фильма, у которого изменились лайки, увеличивается один раз за сброс.
+ * Пакет пишется в отдельной транзакции, слушатели узнают о лайках только после её фиксации.
+ * Событие, которое не меняет последнее известное состояние пары, в буфер не попадает:
+ * это состояние берётся из буфера, из сбрасываемого пакета или из матрицы лайков.
+ * Если пакет не записался, его события пишутся по одному, чтобы одна испорченная строка не держала остальные.
+ * Событие, которое нарушает ограничения LIKES или не записалось {@link #MAX_ATTEMPTS} раза подряд, хотя другие
+ * события того же сброса записались, выбрасывается с ошибкой в журнале. Остальные незаписанные события
+ * возвращаются в буфер и пишутся при следующем сбросе: если не записалось ни одно, скорее всего недоступна база.
+ */
+@Slf4j
+@Component
+public class LikeWriteBuffer {
+
+    private static final String INSERT_LIKE_SQL = "INSERT INTO PUBLIC.LIKES (FILM_ID, USER_ID)\n" +
+            "SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM PUBLIC.LIKES WHERE FILM_ID = ? AND USER_ID = ?);";
+    private static final String DELETE_LIKE_SQL = "DELETE FROM PUBLIC.LIKES WHERE FILM_ID = ? AND USER_ID = ?;";
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LikeMatrix likeMatrix;
+    private final ListVersions listVersions;
+    private final List<LikeListener> likeListeners;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+
+    private final Object flushLock = new Object();
+    private LinkedHashMap<Long, Boolean> pending = new LinkedHashMap<>();
+    // Пакет, который сейчас записывается: в матрице лайков его ещё нет
+    private Map<Long, Boolean> flushing = Map.of();
+    // Сколько сбросов подряд событие пары не записалось по отдельности
+    private final Map<Long, Integer> failedAttempts = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private long flushCount;
+    private long flushedEvents;
+    private long failedEvents;
+    private long droppedEvents;
+    private long lastFlushNanos;
+    private long maxFlushNanos;
+    private long totalFlushNanos;
+
+    public LikeWriteBuffer(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           LikeMatrix likeMatrix,
+                           ListVersions listVersions,
+                           List<LikeListener> likeListeners,
+                           @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity,
+                           @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                           @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Буфер может сбрасываться в потоке запроса, но его пакет не должен зависеть от транзакции запроса
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.likeMatrix = likeMatrix;
+        this.listVersions = listVersions;
+        this.likeListeners = likeListeners;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "like-write-buffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Отложенная запись лайков включена: буфер {}, пакет {}, интервал {} мс",
+                capacity, batchSize, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(flushIntervalMs + 5000, TimeUnit.MILLISECONDS);
+        }
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true, если лайка не было и событие поставлено в очередь
+     */
+    public boolean like(int filmId, int userId) {
+        return offer(filmId, userId, true);
+    }
+
+    /**
+     * @return true, если лайк был и событие поставлено в очередь
+     */
+    public boolean unlike(int filmId, int userId) {
+        return offer(filmId, userId, false);
+    }
+
+    /**
+     * @return false, если часть событий не записалась и вернулась в буфер
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            Map<Long, Boolean> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return true;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                flushing = batch;
+            }
+            long started = System.nanoTime();
+            try {
+                write(batch);
+                recordFlush(batch.size(), System.nanoTime() - started);
+                synchronized (this) {
+                    failedAttempts.keySet().removeAll(batch.keySet());
+                }
+                return true;
+            } catch (RuntimeException e) {
+                log.warn("Не удалось записать пакет из {} событий лайков, события пишутся по одному",
+                        batch.size(), e);
+                return writeOneByOne(batch, started);
+            } finally {
+                synchronized (this) {
+                    flushing = Map.of();
+                }
+            }
+        }
+    }
+
+    public synchronized LikeBufferStats getStats() {
+        return new LikeBufferStats(
+                enabled,
+                pending.size(),
+                capacity,
+                flushCount,
+                flushedEvents,
+                failedEvents,
+                droppedEvents,
+                TimeUnit.NANOSECONDS.toMillis(lastFlushNanos),
+                TimeUnit.NANOSECONDS.toMillis(maxFlushNanos),
+                flushCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalFlushNanos / flushCount));
+    }
+
+    private boolean offer(int filmId, int userId, boolean liked) {
+        long key = ((long) filmId << 32) | (userId & 0xFFFFFFFFL);
+        while (true) {
+            synchronized (this) {
+                if (isLiked(key, filmId, userId) == liked) {
+                    return false;
+                }
+                if (pending.size() < capacity || pending.containsKey(key)) {
+                    pending.put(key, liked);
+                    if (pending.size() >= batchSize && scheduler != null && !scheduler.isShutdown()) {
+                        scheduler.execute(this::flushQuietly);
+                    }
+                    return true;
+                }
+            }
+            // Буфер заполнен: сбрасываем его в потоке вызывающего, чтобы не терять события
+            if (!flush() && isFull()) {
+                throw new IllegalStateException("Буфер лайков заполнен, а записать его в базу не удалось.");
+            }
+        }
+    }
+
+    /**
+     * Пишет события пакета по одному в отдельных транзакциях. Незаписанные события возвращаются в буфер,
+     * кроме тех, что нарушают ограничения LIKES или исчерпали попытки, пока база принимала другие события.
+     *
+     * @return true, если в буфер ничего не вернулось
+     */
+    private boolean writeOneByOne(Map<Long, Boolean> batch, long started) {
+        int written = 0;
+        Map<Long, Boolean> failed = new LinkedHashMap<>();
+        List<Long> dropped = new ArrayList<>();
+        for (Map.Entry<Long, Boolean> event : batch.entrySet()) {
+            try {
+                write(Map.of(event.getKey(), event.getValue()));
+                written++;
+            } catch (DataIntegrityViolationException e) {
+                log.error("Событие лайка {} нарушает ограничения LIKES и выброшено", describe(event), e);
+                dropped.add(event.getKey());
+            } catch (RuntimeException e) {
+                failed.put(event.getKey(), event.getValue());
+            }
+        }
+        if (written > 0) {
+            recordFlush(written, System.nanoTime() - started);
+        }
+        synchronized (this) {
+            droppedEvents += dropped.size();
+            LinkedHashMap<Long, Boolean> retry = new LinkedHashMap<>();
+            for (Map.Entry<Long, Boolean> event : failed.entrySet()) {
+                // Если не записалось ни одно событие, попытка не засчитывается: вероятно, недоступна база
+                int attempts = failedAttempts.getOrDefault(event.getKey(), 0) + (written > 0 ? 1 : 0);
+                if (attempts >= MAX_ATTEMPTS) {
+                    log.error("Событие лайка {} не записалось {} раза подряд и выброшено", describe(event), attempts);
+                    droppedEvents++;
+                    failedAttempts.remove(event.getKey());
+                } else {
+                    retry.put(event.getKey(), event.getValue());
+                    failedAttempts.put(event.getKey(), attempts);
+                }
+            }
+            failedAttempts.keySet().removeIf(key -> batch.containsKey(key) && !retry.containsKey(key));
+            int returned = retry.size();
+            failedEvents += returned;
+            // События, пришедшие во время записи, новее событий пакета по тем же парам
+            failedAttempts.keySet().removeAll(pending.keySet());
+            retry.putAll(pending);
+            pending = retry;
+            if (returned > 0) {
+                log.error("Не удалось записать {} событий лайков, они останутся в буфере до следующего сброса",
+                        returned);
+            }
+            return returned == 0;
+        }
+    }
+
+    private static String describe(Map.Entry<Long, Boolean> event) {
+        return (event.getValue() ? "лайк" : "дизлайк") + " фильма " + (int) (event.getKey() >>> 32)
+                + " пользователем " + (int) event.getKey().longValue();
+    }
+
+    /**
+     * Последнее известное состояние пары: сначала буфер, затем записываемый пакет, затем матрица лайков.
+     */
+    private boolean isLiked(long key, int filmId, int userId) {
+        Boolean liked = pending.get(key);
+        if (liked == null) {
+            liked = flushing.get(key);
+        }
+        return liked != null ? liked : likeMatrix.hasLiked(userId, filmId);
+    }
+
+    private void write(Map<Long, Boolean> batch) {
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (Map.Entry<Long, Boolean> event : batch.entrySet()) {
+            int filmId = (int) (event.getKey() >>> 32);
+            int userId = (int) event.getKey().longValue();
+            if (event.getValue()) {
+                inserts.add(new Object[]{filmId, userId, filmId, userId});
+            } else {
+                deletes.add(new Object[]{filmId, userId});
+            }
+        }
+        List<Object[]> added = new ArrayList<>();
+        List<Object[]> removed = new ArrayList<>();
+        Set<Integer> changedFilms = new LinkedHashSet<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            collectChanged(inserts, inserts.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(INSERT_LIKE_SQL, inserts),
+                    added, changedFilms);
+            collectChanged(deletes, deletes.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(DELETE_LIKE_SQL, deletes),
+                    removed, changedFilms);
+            if (!changedFilms.isEmpty()) {
+                jdbcTemplate.batchUpdate(FilmDbStorage.BUMP_FILM_VERSION_SQL, changedFilms.stream()
+                        .map(filmId -> new Object[]{filmId})
+                        .collect(Collectors.toList()));
+            }
+        });
+        listVersions.filmsChanged(changedFilms.size());
+        for (Object[] row : added) {
+            likeListeners.forEach(listener -> listener.onLikeAdded((int) row[0], (int) row[1]));
+        }
+        for (Object[] row : removed) {
+            likeListeners.forEach(listener -> listener.onLikeRemoved((int) row[0], (int) row[1]));
+        }
+    }
+
+    /**
+     * Отбирает строки пакета, которые действительно изменили LIKES.
+     */
+    private static void collectChanged(List<Object[]> rows, int[] counts, List<Object[]> changed,
+                                       Set<Integer> changedFilms) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                changed.add(rows.get(i));
+                changedFilms.add((int) rows.get(i)[0]);
+            }
+        }
+    }
+
+    private synchronized boolean isFull() {
+        return pending.size() >= capacity;
+    }
+
+    private synchronized void recordFlush(int events, long nanos) {
+        flushCount++;
+        flushedEvents += events;
+        lastFlushNanos = nanos;
+        maxFlushNanos = Math.max(maxFlushNanos, nanos);
+        totalFlushNanos += nanos;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка при сбросе буфера лайков", e);
+        }
+    }
+}
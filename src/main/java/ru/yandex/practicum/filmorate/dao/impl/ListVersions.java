@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версии списков фильмов и пользователей для ETag: число строк таблицы плюс сумма их версий.
+ * Считаются запросом один раз при старте, а дальше увеличиваются в памяти после фиксации каждой записи,
+ * поэтому проверка ETag списка не обращается к базе.
+ * <p>
+ * Версия растёт после фиксации, а не до неё: клиент может получить новые данные со старым ETag
+ * и перечитать их ещё раз, но не сохранит старые данные под новым ETag.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ListVersions {
+
+    private static final String FILMS_VERSION_SQL = "SELECT COUNT(*) + COALESCE(SUM(VERSION), 0) FROM PUBLIC.FILMS;";
+    private static final String USERS_VERSION_SQL = "SELECT COUNT(*) + COALESCE(SUM(VERSION), 0) FROM PUBLIC.USERS;";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AtomicLong filmsVersion = new AtomicLong();
+    private final AtomicLong usersVersion = new AtomicLong();
+
+    @PostConstruct
+    public void reload() {
+        filmsVersion.set(jdbcTemplate.queryForObject(FILMS_VERSION_SQL, Long.class));
+        usersVersion.set(jdbcTemplate.queryForObject(USERS_VERSION_SQL, Long.class));
+        log.debug("Версии списков загружены: фильмы {}, пользователи {}", filmsVersion.get(), usersVersion.get());
+    }
+
+    public long getFilmsVersion() {
+        return filmsVersion.get();
+    }
+
+    public long getUsersVersion() {
+        return usersVersion.get();
+    }
+
+    /**
+     * Учитывает changes добавленных или изменённых фильмов после фиксации текущей транзакции.
+     */
+    void filmsChanged(int changes) {
+        AfterCommit.run(() -> filmsVersion.addAndGet(changes));
+    }
+
+    /**
+     * Учитывает добавленного или изменённого пользователя после фиксации текущей транзакции.
+     */
+    void userChanged() {
+        AfterCommit.run(usersVersion::incrementAndGet);
+    }
+}
@@ -1,14 +1,11 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
 import lombok.AllArgsConstructor;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dao.MpaStorage;
+import ru.yandex.practicum.filmorate.dao.cache.ReferenceDataCache;
 import ru.yandex.practicum.filmorate.model.Mpa;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,30 +13,15 @@ import java.util.Optional;
 @AllArgsConstructor
 public class MpaStorageDb implements MpaStorage {
 
-    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache referenceDataCache;
 
     @Override
     public Optional<Mpa> getMpaById(int id) {
-        String sql = "SELECT RATING_NAME FROM PUBLIC.RATINGS WHERE RATING_ID = ?;";
-        SqlRowSet set = jdbcTemplate.queryForRowSet(sql, id);
-        if (set.next()) {
-            String mpaName = set.getString("RATING_NAME");
-            Mpa mpa = new Mpa(id, mpaName);
-            return Optional.of(mpa);
-        } else {
-            return Optional.empty();
-        }
+        return referenceDataCache.getMpa(id);
     }
 
     @Override
     public List<Mpa> getMpaList() {
-        String sql = "SELECT * FROM PUBLIC.RATINGS;";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeMpa(rs));
+        return referenceDataCache.getMpaList();
     }
-
-    private Mpa makeMpa(ResultSet rs) throws SQLException {
-        int id = rs.getInt("RATING_ID");
-        String name = rs.getString("RATING_NAME");
-        return new Mpa(id, name);
-    }
-}
\ No newline at end of file
+}
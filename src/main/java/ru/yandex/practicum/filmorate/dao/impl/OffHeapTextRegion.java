@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Строки в UTF-8 в прямом буфере вне кучи. Место строки в буфере задаётся смещением и длиной в байтах,
+ * которые хранит вызывающий. Новая строка пишется на место прежней, если помещается в него, иначе в конец.
+ * Освободившиеся байты считаются мёртвыми. Когда их становится слишком много, вызывающий переписывает
+ * живые строки в новый буфер через {@link #copy} и дальше работает с ним.
+ * Потокобезопасность обеспечивает вызывающий: запись под эксклюзивной блокировкой, чтение под разделяемой.
+ */
+class OffHeapTextRegion {
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    private int deadBytes;
+
+    /**
+     * Пишет строку вместо прежней строки length байт по смещению offset; length 0 означает, что прежней нет.
+     *
+     * @return смещение строки в буфере
+     */
+    int write(int offset, int length, byte[] bytes) {
+        if (length > 0 && bytes.length <= length) {
+            buffer.duplicate().position(offset).put(bytes);
+            deadBytes += length - bytes.length;
+            return offset;
+        }
+        release(length);
+        ensureCapacity(bytes.length);
+        int newOffset = buffer.position();
+        buffer.put(bytes);
+        return newOffset;
+    }
+
+    /**
+     * Отмечает length байт прежней строки как мёртвые.
+     */
+    void release(int length) {
+        if (length > 0) {
+            deadBytes += length;
+        }
+    }
+
+    String read(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return занятый объём в байтах, включая мёртвые
+     */
+    int size() {
+        return buffer.position();
+    }
+
+    /**
+     * @return true, если мёртвые байты занимают больше половины буфера и стоят его перестройки
+     */
+    boolean needsCompaction() {
+        return deadBytes > INITIAL_CAPACITY && deadBytes > buffer.position() / 2;
+    }
+
+    /**
+     * Переписывает строку из source в конец этого буфера без перекодирования.
+     *
+     * @return смещение строки в этом буфере
+     */
+    int copy(OffHeapTextRegion source, int offset, int length) {
+        ensureCapacity(length);
+        int newOffset = buffer.position();
+        ByteBuffer view = source.buffer.duplicate();
+        view.limit(offset + length).position(offset);
+        buffer.put(view);
+        return newOffset;
+    }
+
+    void clear() {
+        buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+        deadBytes = 0;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() >= extra) {
+            return;
+        }
+        long required = (long) buffer.position() + extra;
+        if (required > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Текстовые данные фильмов не помещаются в буфер: " + required + " байт.");
+        }
+        long capacity = buffer.capacity();
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(capacity, Integer.MAX_VALUE));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
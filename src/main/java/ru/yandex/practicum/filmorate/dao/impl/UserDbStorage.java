@@ -2,23 +2,49 @@ package ru.yandex.practicum.filmorate.dao.impl;
 
 import lombok.AllArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.index.FriendshipGraph;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 @AllArgsConstructor
 public class UserDbStorage implements UserStorage {
 
+    private static final String LOCK_USERS_SQL = "SELECT USER_ID FROM PUBLIC.USERS WHERE USER_ID IN (?, ?)\n" +
+            "ORDER BY USER_ID FOR UPDATE;";
+    private static final String APPROVE_FRIEND_SQL = "UPDATE PUBLIC.FRIENDS SET IF_APPROVED = true\n" +
+            "WHERE USER_ID = ? AND FRIEND_ID = ? AND IF_APPROVED = false;";
+    private static final String INSERT_FRIEND_SQL = "INSERT INTO PUBLIC.FRIENDS (USER_ID, FRIEND_ID, IF_APPROVED)\n" +
+            "SELECT ?, ?, false WHERE NOT EXISTS (SELECT 1 FROM PUBLIC.FRIENDS\n" +
+            "WHERE (USER_ID = ? AND FRIEND_ID = ?) OR (USER_ID = ? AND FRIEND_ID = ?));";
+    private static final String DELETE_FRIEND_REQUEST_SQL = "DELETE FROM PUBLIC.FRIENDS\n" +
+            "WHERE USER_ID = ? AND FRIEND_ID = ? AND IF_APPROVED = false;";
+    private static final String REVOKE_FRIEND_SQL = "UPDATE PUBLIC.FRIENDS SET USER_ID = ?, FRIEND_ID = ?, IF_APPROVED = false\n" +
+            "WHERE ((USER_ID = ? AND FRIEND_ID = ?) OR (USER_ID = ? AND FRIEND_ID = ?)) AND IF_APPROVED = true;";
+
     private final JdbcTemplate jdbcTemplate;
+    private final FriendshipGraph friendshipGraph;
+    private final ListVersions listVersions;
 
     @Override
     public List<User> getUsers() {
@@ -26,6 +52,24 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs));
     }
 
+    @Override
+    public CursorPage<User> getUsersPage(int after, int limit) {
+        String sql = "SELECT * FROM PUBLIC.USERS WHERE USER_ID > ? ORDER BY USER_ID LIMIT ?;";
+        List<User> users = jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), after, limit + 1);
+        Integer nextCursor = null;
+        if (users.size() > limit) {
+            users = new ArrayList<>(users.subList(0, limit));
+            nextCursor = users.get(limit - 1).getId();
+        }
+        return new CursorPage<>(users, nextCursor);
+    }
+
+    @Override
+    public void streamUsers(Consumer<User> consumer) {
+        String sql = "SELECT * FROM PUBLIC.USERS ORDER BY USER_ID;";
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> consumer.accept(makeUser(rs)));
+    }
+
     @Override
     public User createUser(User user) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
@@ -42,13 +86,20 @@ public class UserDbStorage implements UserStorage {
         }, keyHolder);
         int key = (int) keyHolder.getKey();
         user.setId(key);
+        listVersions.userChanged();
         return user;
     }
 
     @Override
     public User updateUser(User user) {
-        String sql = "UPDATE PUBLIC.USERS SET EMAIL = ?, LOGIN = ?, NAME = ?, BIRTHDAY = ? WHERE USER_ID = ?;";
-        jdbcTemplate.update(sql, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), user.getId());
+        String sql = "UPDATE PUBLIC.USERS SET EMAIL = ?, LOGIN = ?, NAME = ?, BIRTHDAY = ?, VERSION = VERSION + 1\n" +
+                "WHERE USER_ID = ?;";
+        int updated = jdbcTemplate.update(sql, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(),
+                user.getId());
+        if (updated == 0) {
+            throw new NotFoundException("Пользователь не найден.");
+        }
+        listVersions.userChanged();
         return user;
     }
 
@@ -65,18 +116,33 @@ public class UserDbStorage implements UserStorage {
                     .login(set.getString("LOGIN"))
                     .name(set.getString("NAME"))
                     .birthday(Objects.requireNonNull(set.getDate("BIRTHDAY")).toLocalDate())
+                    .version(set.getLong("VERSION"))
                     .build());
         }
     }
 
+    @Override
+    public long getUserVersion(int id) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT VERSION FROM PUBLIC.USERS WHERE USER_ID = ?;",
+                Long.class, id);
+        if (versions.isEmpty()) {
+            throw new NotFoundException("Пользователь не найден.");
+        }
+        return versions.get(0);
+    }
+
+    /**
+     * Сумма числа пользователей и их версий: пользователи не удаляются, поэтому
+     * каждое добавление или изменение увеличивает её на единицу. Хранится в памяти, см. {@link ListVersions}.
+     */
+    @Override
+    public long getUsersVersion() {
+        return listVersions.getUsersVersion();
+    }
+
     @Override
     public List<User> getFriends(int id) {
-        String sql = "SELECT u.USER_ID, u.EMAIL, u.LOGIN, u.NAME, u.BIRTHDAY FROM FRIENDS f " +
-                "JOIN USERS u ON f.FRIEND_ID = u.USER_ID WHERE f.USER_ID = ?\n" +
-                "UNION\n" +
-                "SELECT u.USER_ID, u.EMAIL, u.LOGIN, u.NAME, u.BIRTHDAY FROM FRIENDS f " +
-                "JOIN USERS u ON f.USER_ID = u.USER_ID WHERE (f.FRIEND_ID = ? AND f.IF_APPROVED = true);";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), id, id);
+        return getUsersByIds(friendshipGraph.getFriends(id));
     }
 
     @Override
@@ -86,74 +152,67 @@ public class UserDbStorage implements UserStorage {
         return set.next();
     }
 
+    /**
+     * Добавляет заявку в друзья или подтверждает встречную. Обе строки пользователей блокируются
+     * в порядке возрастания id, поэтому параллельные запросы одной пары выполняются по очереди.
+     */
     @Override
-    public void checkAndUpdateFriends(int id, int friendId) {
-        String sql = "SELECT * FROM PUBLIC.FRIENDS WHERE USER_ID = ? AND FRIEND_ID = ?;";
-        SqlRowSet setDirect = jdbcTemplate.queryForRowSet(sql, id, friendId);
-        SqlRowSet setReversed = jdbcTemplate.queryForRowSet(sql, friendId, id);
-        boolean isDirectNotEmpty = setDirect.next();
-        boolean isReversedNotEmpty = setReversed.next();
-        if (!isDirectNotEmpty && !isReversedNotEmpty) {
-            String sqlInsert = "INSERT INTO PUBLIC.FRIENDS (USER_ID, FRIEND_ID, IF_APPROVED) VALUES (?, ?, ?);";
-            jdbcTemplate.update(sqlInsert, id, friendId, false);
-        } else if (isReversedNotEmpty) {
-            String sqlUpdate = "UPDATE PUBLIC.FRIENDS SET FRIEND_ID = ?, IF_APPROVED = true WHERE USER_ID = ?;";
-            jdbcTemplate.update(sqlUpdate, id, friendId);
+    @Transactional
+    public boolean checkAndUpdateFriends(int id, int friendId) {
+        lockUsers(id, friendId);
+        boolean changed = jdbcTemplate.update(APPROVE_FRIEND_SQL, friendId, id) > 0
+                || jdbcTemplate.update(INSERT_FRIEND_SQL, id, friendId, id, friendId, friendId, id) > 0;
+        if (changed) {
+            AfterCommit.run(() -> friendshipGraph.addFriend(id, friendId));
         }
+        return changed;
     }
 
+    /**
+     * Удаляет friendId из друзей id. Неподтверждённая заявка id удаляется,
+     * подтверждённая дружба в любом направлении превращается в заявку friendId к id.
+     */
     @Override
-    public void deleteFriend(int id, int friendId) {
-        String sql = "SELECT * FROM PUBLIC.FRIENDS WHERE USER_ID = ? AND FRIEND_ID = ?;";
-        SqlRowSet setDirect = jdbcTemplate.queryForRowSet(sql, id, friendId);
-        boolean isDirectNotEmpty = setDirect.next();
-        if (isDirectNotEmpty) {
-            boolean ifApproved = setDirect.getBoolean("IF_APPROVED");
-            String sqlDelete = "DELETE FROM PUBLIC.FRIENDS WHERE USER_ID = ? AND FRIEND_ID = ?;";
-            if (!ifApproved) {
-                jdbcTemplate.update(sqlDelete, id, friendId);
-            } else {
-                jdbcTemplate.update(sqlDelete, id, friendId);
-                String sqlUpdate = "INSERT INTO PUBLIC.FRIENDS (USER_ID, FRIEND_ID, IF_APPROVED) VALUES (?, ?, ?);";
-                jdbcTemplate.update(sqlUpdate, friendId, id, false);
-            }
-        } else {
-            SqlRowSet setReversed = jdbcTemplate.queryForRowSet(sql, friendId, id);
-            boolean isReversedNotEmpty = setReversed.next();
-            if (isReversedNotEmpty) {
-                boolean ifApproved = setReversed.getBoolean("IF_APPROVED");
-                if (ifApproved) {
-                    String sqlUpdate = "INSERT INTO PUBLIC.FRIENDS (USER_ID, FRIEND_ID, IF_APPROVED) VALUES (?, ?, ?);";
-                    jdbcTemplate.update(sqlUpdate, friendId, id, false);
-                }
-            }
+    @Transactional
+    public boolean deleteFriend(int id, int friendId) {
+        lockUsers(id, friendId);
+        boolean changed = jdbcTemplate.update(DELETE_FRIEND_REQUEST_SQL, id, friendId) > 0
+                || jdbcTemplate.update(REVOKE_FRIEND_SQL, friendId, id, id, friendId, friendId, id) > 0;
+        if (changed) {
+            AfterCommit.run(() -> friendshipGraph.removeFriend(id, friendId));
         }
+        return changed;
     }
 
     @Override
     public List<User> getCommonFriends(int id1, int id2) {
-        String sql = "SELECT * FROM USERS u \n" +
-                "WHERE USER_ID IN \n" +
-                "(\n" +
-                "SELECT *\n" +
-                "FROM\n" +
-                "(SELECT f.FRIEND_ID AS FRIENDS\n" +
-                "FROM FRIENDS f\n" +
-                "WHERE f.USER_ID = ?\n" +
-                "UNION\n" +
-                "SELECT f.USER_ID\n" +
-                "FROM FRIENDS f \n" +
-                "WHERE (f.FRIEND_ID = ? AND f.IF_APPROVED = true))\n" +
-                "WHERE friends IN (\n" +
-                "SELECT f.FRIEND_ID  AS FRIENDS\n" +
-                "FROM FRIENDS f\n" +
-                "WHERE f.USER_ID = ?\n" +
-                "UNION\n" +
-                "SELECT f.USER_ID\n" +
-                "FROM FRIENDS f \n" +
-                "WHERE (f.FRIEND_ID = ? AND f.IF_APPROVED = true))\n" +
-                ");";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), id1, id1, id2, id2);
+        return getUsersByIds(friendshipGraph.getCommonFriends(id1, id2));
+    }
+
+    @Override
+    public List<User> getFriendSuggestions(int id, int limit) {
+        return getUsersByIds(friendshipGraph.suggestFriends(id, limit));
+    }
+
+    private void lockUsers(int id, int friendId) {
+        List<Integer> locked = jdbcTemplate.queryForList(LOCK_USERS_SQL, Integer.class, id, friendId);
+        if (!locked.contains(id) || !locked.contains(friendId)) {
+            throw new NotFoundException("Пользователь не найден.");
+        }
+    }
+
+    private List<User> getUsersByIds(int[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        String inSql = String.join(",", Collections.nCopies(ids.length, "?"));
+        String sql = "SELECT * FROM PUBLIC.USERS WHERE USER_ID IN (" + inSql + ");";
+        List<User> users = jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), Arrays.stream(ids).boxed().toArray());
+        Map<Integer, User> userById = users.stream().collect(Collectors.toMap(User::getId, Function.identity()));
+        return Arrays.stream(ids)
+                .mapToObj(userById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     private User makeUser(ResultSet rs) throws SQLException {
@@ -163,6 +222,7 @@ public class UserDbStorage implements UserStorage {
                 .login(rs.getString("LOGIN"))
                 .name(rs.getString("NAME"))
                 .birthday(rs.getDate("BIRTHDAY").toLocalDate())
+                .version(rs.getLong("VERSION"))
                 .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,371 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.cache.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Самые популярные фильмы каждого жанра и каждого рейтинга MPA. На категорию хранится упорядоченный набор
+ * не больше capacity фильмов и граница: ключ, лучше которого нет ни у одного фильма категории вне набора.
+ * Фильмы набора, которые стоят раньше границы, гарантированно первые в категории, и запрос отдаёт их сразу.
+ * Лайки и изменение жанров или рейтинга фильма правят наборы на месте; если подтверждённых фильмов
+ * не хватает на запрос, набор категории пересобирается перебором её фильмов. Набор строится при первом запросе.
+ * <p>
+ * Ключ фильма — long, упорядоченный как рейтинг: по убыванию лайков, при равенстве по возрастанию id.
+ * Число лайков берётся из {@link LikeMatrix}, своей копии счётчиков нет; набор помнит ключи своих фильмов,
+ * чтобы найти прежний ключ фильма, когда его лайки изменились.
+ * Лайк не берёт монитор индекса, а только помечает фильм; помеченные фильмы переставляются при следующем запросе.
+ * Для пересечения жанра и рейтинга обходится набор меньшей из двух категорий с проверкой второй;
+ * по индексам фильтрации пересечение ищется, только если подтверждённых фильмов набора на запрос не хватило.
+ * Выдача без условий берётся из общего рейтинга.
+ */
+@Slf4j
+@Component
+public class CategoryPopularityIndex implements LikeListener {
+
+    private static final long NO_BOUND = Long.MAX_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmPopularityIndex popularityIndex;
+    private final LikeMatrix likeMatrix;
+    private final FilmFilterIndex filterIndex;
+    // Сколько фильмов категории хранится в наборе, больше этого числа запрос считается перебором
+    private final int capacity;
+    private final Map<Integer, CategoryTop> topByGenre = new HashMap<>();
+    private final Map<Integer, CategoryTop> topByMpa = new HashMap<>();
+    // Фильмы, у которых изменились лайки, но не место в наборах
+    private final Set<Integer> changedFilms = ConcurrentHashMap.newKeySet();
+    // Число фильмов каждого жанра по номеру бита и каждого рейтинга, чтобы выбрать меньшую категорию
+    private final int[] genreSizes = new int[Long.SIZE];
+    private final Map<Integer, Integer> mpaSizes = new HashMap<>();
+    // По id фильма; рейтинг 0 означает, что фильма нет
+    private long[] genreMasks = new long[INITIAL_CAPACITY];
+    private int[] mpaIds = new int[INITIAL_CAPACITY];
+
+    public CategoryPopularityIndex(JdbcTemplate jdbcTemplate,
+                                   FilmPopularityIndex popularityIndex,
+                                   LikeMatrix likeMatrix,
+                                   FilmFilterIndex filterIndex,
+                                   @Value("${filmorate.films.popular-by-category.capacity:200}") int capacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.popularityIndex = popularityIndex;
+        this.likeMatrix = likeMatrix;
+        this.filterIndex = filterIndex;
+        this.capacity = capacity;
+    }
+
+    @PostConstruct
+    public synchronized void reload() {
+        topByGenre.clear();
+        topByMpa.clear();
+        changedFilms.clear();
+        Arrays.fill(genreSizes, 0);
+        mpaSizes.clear();
+        genreMasks = new long[INITIAL_CAPACITY];
+        mpaIds = new int[INITIAL_CAPACITY];
+        jdbcTemplate.query("SELECT FILM_ID, RATING_ID FROM PUBLIC.FILMS;", rs -> {
+            int filmId = rs.getInt("FILM_ID");
+            ensureCapacity(filmId);
+            mpaIds[filmId] = rs.getInt("RATING_ID");
+            mpaSizes.merge(mpaIds[filmId], 1, Integer::sum);
+        });
+        jdbcTemplate.query("SELECT FILM_ID, GENRE_ID FROM PUBLIC.FILM_GENRE;", rs -> {
+            genreMasks[rs.getInt("FILM_ID")] |= ReferenceDataCache.genreBit(rs.getInt("GENRE_ID"));
+        });
+        for (long mask : genreMasks) {
+            for (long bits = mask; bits != 0; bits &= bits - 1) {
+                genreSizes[Long.numberOfTrailingZeros(bits)]++;
+            }
+        }
+        log.debug("Индекс популярности по категориям загружен");
+    }
+
+    /**
+     * Добавляет фильм или меняет его жанры и рейтинг.
+     */
+    public synchronized void index(int filmId, Collection<Integer> genreIds, int mpaId) {
+        ensureCapacity(filmId);
+        long key = key(filmId);
+        long oldMask = genreMasks[filmId];
+        long newMask = 0;
+        for (int genreId : genreIds) {
+            newMask |= ReferenceDataCache.genreBit(genreId);
+        }
+        for (long bits = oldMask & ~newMask; bits != 0; bits &= bits - 1) {
+            int genreId = Long.numberOfTrailingZeros(bits);
+            remove(topByGenre.get(genreId), filmId);
+            genreSizes[genreId]--;
+        }
+        for (long bits = newMask & ~oldMask; bits != 0; bits &= bits - 1) {
+            int genreId = Long.numberOfTrailingZeros(bits);
+            offer(topByGenre.get(genreId), key);
+            genreSizes[genreId]++;
+        }
+        if (mpaIds[filmId] != mpaId) {
+            if (mpaIds[filmId] != 0) {
+                remove(topByMpa.get(mpaIds[filmId]), filmId);
+                mpaSizes.merge(mpaIds[filmId], -1, Integer::sum);
+            }
+            offer(topByMpa.get(mpaId), key);
+            mpaSizes.merge(mpaId, 1, Integer::sum);
+        }
+        genreMasks[filmId] = newMask;
+        mpaIds[filmId] = mpaId;
+    }
+
+    @Override
+    public void onLikeAdded(int filmId, int userId) {
+        changedFilms.add(filmId);
+    }
+
+    @Override
+    public void onLikeRemoved(int filmId, int userId) {
+        changedFilms.add(filmId);
+    }
+
+    /**
+     * Маска жанров фильма в битах {@link ReferenceDataCache#genreBit}, 0 для фильма без жанров или неизвестного.
+     */
+    public synchronized long getGenreMask(int filmId) {
+        return filmId > 0 && filmId < genreMasks.length ? genreMasks[filmId] : 0;
+    }
+
+    /**
+     * Первые count фильмов жанра genreId и рейтинга mpaId по убыванию лайков, null означает отсутствие условия.
+     */
+    public List<Integer> getTopFilmIds(Integer genreId, Integer mpaId, int count) {
+        if (genreId != null && mpaId != null) {
+            List<Integer> ids = getCertifiedTopFilmIds(genreId, mpaId, count);
+            if (ids != null) {
+                return ids;
+            }
+            FilmFilter filter = FilmFilter.builder()
+                    .genreIds(Set.of(genreId))
+                    .mpaIds(Set.of(mpaId))
+                    .sortByPopularity(true)
+                    .build();
+            return Arrays.stream(filterIndex.find(filter, 0, count)).boxed().collect(Collectors.toList());
+        }
+        if (genreId != null) {
+            return getTopFilmIdsByGenre(genreId, count);
+        }
+        if (mpaId != null) {
+            return getTopFilmIdsByMpa(mpaId, count);
+        }
+        return popularityIndex.getTopFilmIds(count);
+    }
+
+    public synchronized List<Integer> getTopFilmIdsByGenre(int genreId, int count) {
+        return getTopFilmIds(topByGenre, genreId, count, genreMember(genreId));
+    }
+
+    public synchronized List<Integer> getTopFilmIdsByMpa(int mpaId, int count) {
+        return getTopFilmIds(topByMpa, mpaId, count, mpaMember(mpaId));
+    }
+
+    /**
+     * Первые count фильмов пересечения жанра и рейтинга из набора меньшей категории
+     * или null, если подтверждённых фильмов пересечения в наборе меньше.
+     */
+    private synchronized List<Integer> getCertifiedTopFilmIds(int genreId, int mpaId, int count) {
+        applyChanges();
+        IntPredicate inGenre = genreMember(genreId);
+        IntPredicate inMpa = mpaMember(mpaId);
+        int genreSize = genreId >= 0 && genreId < Long.SIZE ? genreSizes[genreId] : 0;
+        if (genreSize <= mpaSizes.getOrDefault(mpaId, 0)) {
+            return top(topByGenre, genreId, inGenre).certified(count, inMpa);
+        }
+        return top(topByMpa, mpaId, inMpa).certified(count, inGenre);
+    }
+
+    private List<Integer> getTopFilmIds(Map<Integer, CategoryTop> tops, int category, int count,
+                                        IntPredicate member) {
+        applyChanges();
+        if (count > capacity) {
+            return ids(select(member, count).keys, count);
+        }
+        CategoryTop top = tops.get(category);
+        if (top != null) {
+            List<Integer> ids = top.certified(count, filmId -> true);
+            if (ids != null) {
+                return ids;
+            }
+        }
+        top = select(member, capacity);
+        tops.put(category, top);
+        return top.certified(count, filmId -> true);
+    }
+
+    /**
+     * Набор категории; при первом обращении строится перебором.
+     */
+    private CategoryTop top(Map<Integer, CategoryTop> tops, int category, IntPredicate member) {
+        CategoryTop top = tops.get(category);
+        if (top == null) {
+            top = select(member, capacity);
+            tops.put(category, top);
+        }
+        return top;
+    }
+
+    private IntPredicate genreMember(int genreId) {
+        return filmId -> (genreMasks[filmId] & ReferenceDataCache.genreBit(genreId)) != 0;
+    }
+
+    private IntPredicate mpaMember(int mpaId) {
+        return filmId -> mpaIds[filmId] == mpaId;
+    }
+
+    /**
+     * Переставляет фильмы, помеченные после прошлого запроса. Пометка снимается до чтения числа лайков,
+     * поэтому лайк, пришедший в это время, пометит фильм снова.
+     */
+    private void applyChanges() {
+        Iterator<Integer> iterator = changedFilms.iterator();
+        while (iterator.hasNext()) {
+            int filmId = iterator.next();
+            iterator.remove();
+            changeLikes(filmId);
+        }
+    }
+
+    /**
+     * Переставляет фильм в наборах его категорий по текущему числу лайков в матрице.
+     */
+    private void changeLikes(int filmId) {
+        if (filmId <= 0 || filmId >= mpaIds.length || mpaIds[filmId] == 0) {
+            return;
+        }
+        long key = key(filmId);
+        for (long bits = genreMasks[filmId]; bits != 0; bits &= bits - 1) {
+            move(topByGenre.get(Long.numberOfTrailingZeros(bits)), filmId, key);
+        }
+        move(topByMpa.get(mpaIds[filmId]), filmId, key);
+    }
+
+    /**
+     * Лучшие limit фильмов категории перебором, граница — лучший из не вошедших.
+     */
+    private CategoryTop select(IntPredicate member, int limit) {
+        CategoryTop top = new CategoryTop();
+        for (int filmId = 1; filmId < mpaIds.length; filmId++) {
+            if (mpaIds[filmId] != 0 && member.test(filmId)) {
+                top.offer(key(filmId), limit);
+            }
+        }
+        return top;
+    }
+
+    private long key(int filmId) {
+        return ((long) (Integer.MAX_VALUE - likeMatrix.getLikeCount(filmId)) << 32) | filmId;
+    }
+
+    private void move(CategoryTop top, int filmId, long key) {
+        if (top == null) {
+            return;
+        }
+        if (top.remove(filmId)) {
+            top.add(key);
+        } else {
+            top.offer(key, capacity);
+        }
+    }
+
+    private void offer(CategoryTop top, long key) {
+        if (top != null) {
+            top.offer(key, capacity);
+        }
+    }
+
+    private static void remove(CategoryTop top, int filmId) {
+        if (top != null) {
+            top.remove(filmId);
+        }
+    }
+
+    private static List<Integer> ids(NavigableSet<Long> keys, int count) {
+        List<Integer> ids = new ArrayList<>(Math.min(count, keys.size()));
+        for (long key : keys) {
+            if (ids.size() == count) {
+                break;
+            }
+            ids.add((int) key);
+        }
+        return ids;
+    }
+
+    private void ensureCapacity(int filmId) {
+        if (filmId >= mpaIds.length) {
+            int capacity = Math.max(filmId + 1, mpaIds.length * 2);
+            genreMasks = Arrays.copyOf(genreMasks, capacity);
+            mpaIds = Arrays.copyOf(mpaIds, capacity);
+        }
+    }
+
+    /**
+     * Набор лучших фильмов категории. Любой фильм категории вне набора имеет ключ не меньше bound.
+     */
+    private static class CategoryTop {
+        private final NavigableSet<Long> keys = new TreeSet<>();
+        // Ключ каждого фильма набора, с которым он лежит в keys
+        private final Map<Integer, Long> keyByFilm = new HashMap<>();
+        private long bound = NO_BOUND;
+
+        /**
+         * Добавляет фильм, если набор не заполнен или фильм лучше последнего. Вытесненный или
+         * не попавший фильм сдвигает границу.
+         */
+        void offer(long key, int limit) {
+            if (keys.size() < limit || key < keys.last()) {
+                add(key);
+                if (keys.size() > limit) {
+                    long evicted = keys.pollLast();
+                    keyByFilm.remove((int) evicted);
+                    bound = Math.min(bound, evicted);
+                }
+            } else {
+                bound = Math.min(bound, key);
+            }
+        }
+
+        void add(long key) {
+            keys.add(key);
+            keyByFilm.put((int) key, key);
+        }
+
+        /**
+         * @return true, если фильм был в наборе
+         */
+        boolean remove(int filmId) {
+            Long key = keyByFilm.remove(filmId);
+            return key != null && keys.remove(key);
+        }
+
+        /**
+         * @return первые count фильмов набора, прошедших filter, или null, если подтверждённых таких фильмов
+         * в наборе меньше и при этом вне набора есть фильмы категории
+         */
+        List<Integer> certified(int count, IntPredicate filter) {
+            List<Integer> ids = new ArrayList<>(Math.min(count, keys.size()));
+            for (long key : keys) {
+                if (ids.size() == count || key >= bound) {
+                    break;
+                }
+                if (filter.test((int) key)) {
+                    ids.add((int) key);
+                }
+            }
+            return ids.size() == count || bound == NO_BOUND ? ids : null;
+        }
+    }
+}
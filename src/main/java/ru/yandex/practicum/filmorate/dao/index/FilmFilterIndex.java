@@ -0,0 +1,214 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Битовые индексы фильмов для выборки по жанру, рейтингу MPA и году выпуска.
+ * Бит с номером id фильма стоит в карте каждого его жанра, его рейтинга и года выпуска.
+ * Карты годов лежат в отсортированном словаре, поэтому диапазон годов — это ИЛИ карт из подсловаря,
+ * а весь фильтр — И/ИЛИ над картами без обращения к FILM_GENRE. Операции выполняются пословно
+ * и останавливаются, как только набрано limit фильмов, промежуточные карты не создаются.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmFilterIndex {
+
+    // До скольких совпадений сортировка по популярности ранжирует их сама, а не обходит рейтинг
+    private static final int MAX_RANKED_DIRECTLY = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmPopularityIndex popularityIndex;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, IntBitmap> filmsByGenre = new HashMap<>();
+    private final Map<Integer, IntBitmap> filmsByMpa = new HashMap<>();
+    private final NavigableMap<Integer, IntBitmap> filmsByYear = new TreeMap<>();
+    private IntBitmap films = new IntBitmap();
+
+    @PostConstruct
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            films = new IntBitmap();
+            filmsByGenre.clear();
+            filmsByMpa.clear();
+            filmsByYear.clear();
+            jdbcTemplate.query("SELECT FILM_ID, RATING_ID, RELEASE_DATE FROM PUBLIC.FILMS;", rs -> {
+                int filmId = rs.getInt("FILM_ID");
+                films.set(filmId);
+                bitmap(filmsByMpa, rs.getInt("RATING_ID")).set(filmId);
+                bitmap(filmsByYear, rs.getDate("RELEASE_DATE").toLocalDate().getYear()).set(filmId);
+            });
+            jdbcTemplate.query("SELECT FILM_ID, GENRE_ID FROM PUBLIC.FILM_GENRE;", rs -> {
+                bitmap(filmsByGenre, rs.getInt("GENRE_ID")).set(rs.getInt("FILM_ID"));
+            });
+            log.debug("Индексы фильтрации загружены, фильмов: {}", films.cardinality());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет фильм в индексы или заменяет его прежние жанры, рейтинг и год выпуска.
+     */
+    public void index(int filmId, Collection<Integer> genreIds, int mpaId, LocalDate releaseDate) {
+        lock.writeLock().lock();
+        try {
+            clear(filmsByGenre, filmId);
+            clear(filmsByMpa, filmId);
+            clear(filmsByYear, filmId);
+            films.set(filmId);
+            for (int genreId : genreIds) {
+                bitmap(filmsByGenre, genreId).set(filmId);
+            }
+            bitmap(filmsByMpa, mpaId).set(filmId);
+            bitmap(filmsByYear, releaseDate.getYear()).set(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает до limit id фильмов, подходящих под фильтр: по возрастанию id начиная после after
+     * или, при сортировке по популярности, первые limit по убыванию числа лайков без учёта after.
+     */
+    public int[] find(FilmFilter filter, int after, int limit) {
+        lock.readLock().lock();
+        try {
+            Matcher matcher = new Matcher(filter);
+            if (!filter.isSortByPopularity()) {
+                return collect(matcher, after, limit);
+            }
+            // Немногочисленные совпадения дешевле отсортировать по лайкам напрямую,
+            // чем идти по всему рейтингу в поисках редких подходящих фильмов
+            int[] matched = collect(matcher, 0, MAX_RANKED_DIRECTLY + 1);
+            if (matched.length <= MAX_RANKED_DIRECTLY) {
+                int[] likes = popularityIndex.getLikes(matched);
+                IntCounter ranking = new IntCounter(matched.length);
+                for (int i = 0; i < matched.length; i++) {
+                    ranking.add(matched[i], likes[i]);
+                }
+                return ranking.top(limit);
+            }
+            return popularityIndex.getTopFilmIds(limit, matcher::matches).stream()
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Подходящие id по возрастанию начиная после after: пересечение считается пословно, пока не набрано limit.
+     */
+    private int[] collect(Matcher matcher, int after, int limit) {
+        int[] ids = new int[Math.min(limit, 1024)];
+        int size = 0;
+        int first = after + 1;
+        for (int word = first >>> 6; word < films.wordCount() && size < limit; word++) {
+            long bits = matcher.word(word);
+            if (word == first >>> 6) {
+                bits &= -1L << first;
+            }
+            while (bits != 0 && size < limit) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, Math.min(limit, size * 2));
+                }
+                ids[size++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    private static IntBitmap bitmap(Map<Integer, IntBitmap> bitmaps, int key) {
+        return bitmaps.computeIfAbsent(key, k -> new IntBitmap());
+    }
+
+    private static void clear(Map<Integer, IntBitmap> bitmaps, int filmId) {
+        for (IntBitmap bitmap : bitmaps.values()) {
+            bitmap.clear(filmId);
+        }
+    }
+
+    /**
+     * Фильтр, разобранный в группы карт: внутри группы ИЛИ, между группами И.
+     * Группа null означает, что условие не задано, пустая группа не пропускает ни одного фильма.
+     */
+    private class Matcher {
+        private final IntBitmap[] genres;
+        private final IntBitmap[] mpa;
+        private final IntBitmap[] years;
+
+        Matcher(FilmFilter filter) {
+            genres = select(filmsByGenre, filter.getGenreIds());
+            mpa = select(filmsByMpa, filter.getMpaIds());
+            if (filter.getYearFrom() == null && filter.getYearTo() == null) {
+                years = null;
+            } else {
+                int from = filter.getYearFrom() == null ? Integer.MIN_VALUE : filter.getYearFrom();
+                int to = filter.getYearTo() == null ? Integer.MAX_VALUE : filter.getYearTo();
+                years = from > to ? new IntBitmap[0]
+                        : filmsByYear.subMap(from, true, to, true).values().toArray(new IntBitmap[0]);
+            }
+        }
+
+        long word(int index) {
+            return films.word(index) & union(genres, index) & union(mpa, index) & union(years, index);
+        }
+
+        boolean matches(int filmId) {
+            return films.get(filmId) && contains(genres, filmId) && contains(mpa, filmId) && contains(years, filmId);
+        }
+
+        private IntBitmap[] select(Map<Integer, IntBitmap> bitmaps, Set<Integer> keys) {
+            if (keys == null || keys.isEmpty()) {
+                return null;
+            }
+            return keys.stream()
+                    .map(bitmaps::get)
+                    .filter(Objects::nonNull)
+                    .toArray(IntBitmap[]::new);
+        }
+
+        private long union(IntBitmap[] group, int index) {
+            if (group == null) {
+                return -1L;
+            }
+            long word = 0;
+            for (IntBitmap bitmap : group) {
+                word |= bitmap.word(index);
+            }
+            return word;
+        }
+
+        private boolean contains(IntBitmap[] group, int filmId) {
+            if (group == null) {
+                return true;
+            }
+            for (IntBitmap bitmap : group) {
+                if (bitmap.get(filmId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который поддерживается в памяти.
+ * Строится из таблицы LIKES при старте и обновляется при каждом добавлении или удалении лайка,
+ * поэтому выдача популярных фильмов не требует агрегации по всей таблице LIKES.
+ * Число лайков берётся из {@link LikeMatrix}, той же, из которой его получает фильм в ответе,
+ * поэтому порядок рейтинга и поле likes не расходятся. Слушатели вызываются после матрицы.
+ * Лайк не берёт монитор рейтинга: он только помечает фильм,
+ * а место помеченных фильмов в упорядоченном рейтинге пересчитывается при следующем чтении рейтинга.
+ * Так шквал лайков одного фильма не выстраивается в очередь за монитором рейтинга.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmPopularityIndex implements LikeListener {
+
+    private static final String RANKING_SQL = "SELECT f.FILM_ID, COUNT(l.USER_ID) AS LIKES\n" +
+            "FROM PUBLIC.FILMS f LEFT JOIN PUBLIC.LIKES l ON f.FILM_ID = l.FILM_ID\n" +
+            "GROUP BY f.FILM_ID\n" +
+            "ORDER BY LIKES DESC, f.FILM_ID;";
+
+    private static final Comparator<FilmRank> RANK_ORDER = Comparator.comparingInt(FilmRank::getLikes)
+            .reversed()
+            .thenComparingInt(FilmRank::getFilmId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LikeMatrix likeMatrix;
+    private final Map<Integer, FilmRank> ranks = new HashMap<>();
+    private final NavigableSet<FilmRank> ranking = new TreeSet<>(RANK_ORDER);
+    // Фильмы, у которых изменились лайки, но не место в ranking
+    private final Set<Integer> changedFilms = ConcurrentHashMap.newKeySet();
+    private final LongAdder likeChanges = new LongAdder();
+    // Вместе с likeChanges растёт при каждом изменении рейтинга, читается без блокировки
+    private volatile long revision;
+
+    /**
+     * Перечитывает фильмы, число лайков берёт из уже загруженной матрицы лайков.
+     */
+    @PostConstruct
+    public synchronized void reload() {
+        ranks.clear();
+        ranking.clear();
+        changedFilms.clear();
+        jdbcTemplate.query("SELECT FILM_ID FROM PUBLIC.FILMS;", rs -> {
+            int filmId = rs.getInt("FILM_ID");
+            put(new FilmRank(filmId, likeMatrix.getLikeCount(filmId)));
+        });
+        revision++;
+        log.debug("Рейтинг популярности загружен, фильмов: {}", ranks.size());
+    }
+
+    public synchronized void addFilm(int filmId) {
+        if (!ranks.containsKey(filmId)) {
+            put(new FilmRank(filmId, 0));
+            revision++;
+        }
+    }
+
+    /**
+     * Слушатели вызываются только для лайков, которые действительно записаны в базу или удалены из неё,
+     * поэтому повторы здесь не отсеиваются.
+     */
+    @Override
+    public void onLikeAdded(int filmId, int userId) {
+        markChanged(filmId);
+    }
+
+    @Override
+    public void onLikeRemoved(int filmId, int userId) {
+        markChanged(filmId);
+    }
+
+    public long getRevision() {
+        return revision + likeChanges.sum();
+    }
+
+    public int getLikes(int filmId) {
+        return likeMatrix.getLikeCount(filmId);
+    }
+
+    public int[] getLikes(int[] filmIds) {
+        int[] likes = new int[filmIds.length];
+        for (int i = 0; i < filmIds.length; i++) {
+            likes[i] = likeMatrix.getLikeCount(filmIds[i]);
+        }
+        return likes;
+    }
+
+    public List<Integer> getTopFilmIds(int count) {
+        return getTopFilmIds(count, filmId -> true);
+    }
+
+    /**
+     * Первые count фильмов рейтинга среди тех, что проходят filter.
+     */
+    public synchronized List<Integer> getTopFilmIds(int count, IntPredicate filter) {
+        applyChanges();
+        List<Integer> ids = new ArrayList<>(Math.min(count, ranking.size()));
+        Iterator<FilmRank> iterator = ranking.iterator();
+        while (ids.size() < count && iterator.hasNext()) {
+            int filmId = iterator.next().getFilmId();
+            if (filter.test(filmId)) {
+                ids.add(filmId);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Сравнивает рейтинг в памяти с результатом агрегирующего запроса к LIKES.
+     */
+    public synchronized boolean isConsistentWithDatabase() {
+        applyChanges();
+        List<FilmRank> expected = loadRanking();
+        List<FilmRank> actual = new ArrayList<>(ranking);
+        if (!expected.equals(actual)) {
+            log.warn("Рейтинг популярности расходится с базой данных: в памяти {}, в базе {}", actual, expected);
+            return false;
+        }
+        return true;
+    }
+
+    private List<FilmRank> loadRanking() {
+        return jdbcTemplate.query(RANKING_SQL,
+                (rs, rowNum) -> new FilmRank(rs.getInt("FILM_ID"), rs.getInt("LIKES")));
+    }
+
+    private void markChanged(int filmId) {
+        // Пометка ставится после изменения матрицы: если чтение уже сняло её раньше, оно увидит новое значение
+        changedFilms.add(filmId);
+        likeChanges.increment();
+    }
+
+    /**
+     * Переставляет в ranking фильмы, помеченные после прошлого чтения.
+     * Пометка снимается до чтения числа лайков, поэтому лайк, пришедший в это время, пометит фильм снова.
+     */
+    private void applyChanges() {
+        Iterator<Integer> iterator = changedFilms.iterator();
+        while (iterator.hasNext()) {
+            int filmId = iterator.next();
+            iterator.remove();
+            int likes = likeMatrix.getLikeCount(filmId);
+            FilmRank current = ranks.get(filmId);
+            if (current != null) {
+                if (current.getLikes() == likes) {
+                    continue;
+                }
+                ranking.remove(current);
+            }
+            put(new FilmRank(filmId, likes));
+        }
+    }
+
+    private void put(FilmRank rank) {
+        ranks.put(rank.getFilmId(), rank);
+        ranking.add(rank);
+    }
+
+    @Value
+    private static class FilmRank {
+        int filmId;
+        int likes;
+    }
+}
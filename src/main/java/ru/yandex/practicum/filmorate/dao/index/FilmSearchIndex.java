@@ -0,0 +1,228 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Полнотекстовый индекс по названиям и описаниям фильмов.
+ * Текст приводится к нижнему регистру, «ё» заменяется на «е» и режется на слова из букв и цифр любого алфавита.
+ * Словарь терминов отсортирован, поэтому каждое слово запроса ищется как префикс. Для каждого термина
+ * хранятся отсортированные массивы id фильмов отдельно для названий и описаний, для каждого фильма —
+ * массивы id его терминов, чтобы при изменении фильма убрать старые вхождения.
+ * Термин, у которого не осталось ни одного фильма, удаляется из словаря, а его id используется повторно.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmSearchIndex {
+
+    private static final int[] EMPTY = new int[0];
+    // Слов запроса сверх этого числа не учитываем, чтобы оценка помещалась в старшие биты счётчика
+    private static final int MAX_QUERY_TOKENS = 8;
+    private static final int TITLE_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    private static final int EXACT_MATCH_FACTOR = 2;
+    private static final int LIKES_BITS = 24;
+    private static final int MAX_LIKES = (1 << LIKES_BITS) - 1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmPopularityIndex popularityIndex;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Integer> termIds = new TreeMap<>();
+    private final List<String> terms = new ArrayList<>();
+    private final Deque<Integer> freeTermIds = new ArrayDeque<>();
+    private final SortedIntAdjacency titlePostings = new SortedIntAdjacency();
+    private final SortedIntAdjacency descriptionPostings = new SortedIntAdjacency();
+    private final SortedIntAdjacency titleTerms = new SortedIntAdjacency();
+    private final SortedIntAdjacency descriptionTerms = new SortedIntAdjacency();
+
+    @PostConstruct
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            termIds.clear();
+            terms.clear();
+            freeTermIds.clear();
+            titlePostings.clear();
+            descriptionPostings.clear();
+            titleTerms.clear();
+            descriptionTerms.clear();
+            jdbcTemplate.query("SELECT FILM_ID, TITLE, DESCRIPTION FROM PUBLIC.FILMS;", rs -> {
+                put(rs.getInt("FILM_ID"), rs.getString("TITLE"), rs.getString("DESCRIPTION"));
+            });
+            log.debug("Поисковый индекс фильмов загружен, терминов: {}", termIds.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет фильм в индекс или заменяет его прежние название и описание.
+     */
+    public void index(int filmId, String title, String description) {
+        lock.writeLock().lock();
+        try {
+            int[] oldTitleTerms = remove(filmId, titleTerms, titlePostings);
+            int[] oldDescriptionTerms = remove(filmId, descriptionTerms, descriptionPostings);
+            put(filmId, title, description);
+            // Слова, которые остались в новом тексте, уже снова получили фильм и не удаляются
+            pruneEmptyTerms(oldTitleTerms);
+            pruneEmptyTerms(oldDescriptionTerms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return termIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает до limit id фильмов, в которых каждое слово запроса является началом какого-либо слова
+     * названия или описания. Совпадение в названии весит больше, чем в описании, целое слово больше префикса.
+     * При равной оценке выше фильм с большим числом лайков, затем с меньшим id.
+     */
+    public int[] search(String query, int limit) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return EMPTY;
+        }
+        lock.readLock().lock();
+        try {
+            IntCounter scores = null;
+            for (String token : tokens.subList(0, Math.min(tokens.size(), MAX_QUERY_TOKENS))) {
+                IntCounter tokenScores = scoreToken(token);
+                scores = scores == null ? tokenScores : retainCommon(scores, tokenScores);
+                if (scores.size() == 0) {
+                    return EMPTY;
+                }
+            }
+            IntCounter ranked = new IntCounter(scores.size());
+            for (int filmId : scores.keys()) {
+                int likes = Math.min(popularityIndex.getLikes(filmId), MAX_LIKES);
+                ranked.add(filmId, (scores.get(filmId) << LIKES_BITS) | likes);
+            }
+            return ranked.top(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        Set<String> tokens = new LinkedHashSet<>();
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Лучшая оценка каждого фильма по одному слову запроса среди всех терминов с этим префиксом.
+     */
+    private IntCounter scoreToken(String token) {
+        IntCounter scores = new IntCounter(16);
+        Map<String, Integer> terms = termIds.subMap(token, true, token + Character.MAX_VALUE, false);
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            int factor = term.getKey().equals(token) ? EXACT_MATCH_FACTOR : 1;
+            addPostings(scores, titlePostings, term.getValue(), TITLE_WEIGHT * factor);
+            addPostings(scores, descriptionPostings, term.getValue(), DESCRIPTION_WEIGHT * factor);
+        }
+        return scores;
+    }
+
+    private void addPostings(IntCounter scores, SortedIntAdjacency postings, int termId, int weight) {
+        int[] filmIds = postings.row(termId);
+        int size = postings.size(termId);
+        for (int i = 0; i < size; i++) {
+            scores.max(filmIds[i], weight);
+        }
+    }
+
+    private IntCounter retainCommon(IntCounter scores, IntCounter tokenScores) {
+        IntCounter common = new IntCounter(Math.min(scores.size(), tokenScores.size()));
+        for (int filmId : scores.keys()) {
+            int tokenScore = tokenScores.get(filmId);
+            if (tokenScore > 0) {
+                common.add(filmId, scores.get(filmId) + tokenScore);
+            }
+        }
+        return common;
+    }
+
+    private void put(int filmId, String title, String description) {
+        for (String token : tokenize(title)) {
+            int termId = termId(token);
+            titlePostings.add(termId, filmId);
+            titleTerms.add(filmId, termId);
+        }
+        for (String token : tokenize(description)) {
+            int termId = termId(token);
+            descriptionPostings.add(termId, filmId);
+            descriptionTerms.add(filmId, termId);
+        }
+    }
+
+    private int termId(String token) {
+        return termIds.computeIfAbsent(token, key -> {
+            if (!freeTermIds.isEmpty()) {
+                int termId = freeTermIds.pop();
+                terms.set(termId, key);
+                return termId;
+            }
+            terms.add(key);
+            return terms.size() - 1;
+        });
+    }
+
+    private int[] remove(int filmId, SortedIntAdjacency filmTerms, SortedIntAdjacency postings) {
+        int[] termIdsOfFilm = filmTerms.copy(filmId);
+        for (int termId : termIdsOfFilm) {
+            postings.remove(termId, filmId);
+            filmTerms.remove(filmId, termId);
+        }
+        return termIdsOfFilm;
+    }
+
+    private void pruneEmptyTerms(int[] termIdsToCheck) {
+        for (int termId : termIdsToCheck) {
+            String term = terms.get(termId);
+            if (term != null && titlePostings.size(termId) == 0 && descriptionPostings.size(termId) == 0) {
+                termIds.remove(term);
+                terms.set(termId, null);
+                freeTermIds.push(termId);
+            }
+        }
+    }
+}
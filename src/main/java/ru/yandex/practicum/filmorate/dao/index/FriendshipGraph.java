@@ -0,0 +1,116 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Граф дружбы в памяти. Для каждого пользователя хранится отсортированный массив id тех,
+ * кого он видит в списке друзей: строки FRIENDS, где он USER_ID, и подтверждённые строки, где он FRIEND_ID.
+ * Массивы индексируются id пользователя, поэтому общие друзья считаются слиянием двух отсортированных массивов.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FriendshipGraph {
+
+    private static final int[] EMPTY = new int[0];
+    // Сколько рёбер второго уровня просматривается при подборе рекомендаций
+    private static final int MAX_TRAVERSED_EDGES = 1_000_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SortedIntAdjacency friends = new SortedIntAdjacency();
+
+    @PostConstruct
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            friends.clear();
+            jdbcTemplate.query("SELECT USER_ID, FRIEND_ID, IF_APPROVED FROM PUBLIC.FRIENDS;", rs -> {
+                int userId = rs.getInt("USER_ID");
+                int friendId = rs.getInt("FRIEND_ID");
+                friends.add(userId, friendId);
+                if (rs.getBoolean("IF_APPROVED")) {
+                    friends.add(friendId, userId);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Граф дружбы загружен");
+    }
+
+    public void addFriend(int userId, int friendId) {
+        lock.writeLock().lock();
+        try {
+            friends.add(userId, friendId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFriend(int userId, int friendId) {
+        lock.writeLock().lock();
+        try {
+            friends.remove(userId, friendId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int[] getFriends(int userId) {
+        lock.readLock().lock();
+        try {
+            return friends.copy(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int[] getCommonFriends(int userId, int otherId) {
+        lock.readLock().lock();
+        try {
+            return friends.intersect(userId, otherId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Подбирает до limit пользователей, которые не являются друзьями userId,
+     * по убыванию числа общих друзей, при равенстве по возрастанию id.
+     */
+    public int[] suggestFriends(int userId, int limit) {
+        lock.readLock().lock();
+        try {
+            int friendsCount = friends.size(userId);
+            if (friendsCount == 0) {
+                return EMPTY;
+            }
+            int[] userFriends = friends.row(userId);
+            IntCounter mutualCounts = new IntCounter(friendsCount * 8);
+            int budget = MAX_TRAVERSED_EDGES;
+            for (int i = 0; i < friendsCount && budget > 0; i++) {
+                int friendId = userFriends[i];
+                int[] candidates = friends.row(friendId);
+                int candidatesCount = Math.min(friends.size(friendId), budget);
+                budget -= candidatesCount;
+                for (int j = 0; j < candidatesCount; j++) {
+                    int candidateId = candidates[j];
+                    if (candidateId != userId && !friends.contains(userId, candidateId)) {
+                        mutualCounts.increment(candidateId);
+                    }
+                }
+            }
+            return mutualCounts.top(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
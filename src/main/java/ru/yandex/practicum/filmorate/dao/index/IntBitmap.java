@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.Arrays;
+
+/**
+ * Битовая карта по неотрицательным int с доступом к 64-битным словам, чтобы владелец мог
+ * пересекать и объединять карты пословно без промежуточных копий. Синхронизацию обеспечивает владелец.
+ */
+class IntBitmap {
+
+    private long[] words = new long[16];
+
+    void set(int index) {
+        int word = index >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        }
+        words[word] |= 1L << index;
+    }
+
+    void clear(int index) {
+        int word = index >>> 6;
+        if (word < words.length) {
+            words[word] &= ~(1L << index);
+        }
+    }
+
+    boolean get(int index) {
+        int word = index >>> 6;
+        return word < words.length && (words[word] & (1L << index)) != 0;
+    }
+
+    /**
+     * Слово с номером index; за пределами карты — 0.
+     */
+    long word(int index) {
+        return index < words.length ? words[index] : 0;
+    }
+
+    int wordCount() {
+        return words.length;
+    }
+
+    int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
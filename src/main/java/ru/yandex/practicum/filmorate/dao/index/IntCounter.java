@@ -0,0 +1,172 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.Arrays;
+
+/**
+ * Счётчик по неотрицательным int-ключам с открытой адресацией, без упаковки в Integer.
+ */
+class IntCounter {
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private int[] counts;
+    private int size;
+
+    IntCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize) * 2 - 1) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    void increment(int key) {
+        add(key, 1);
+    }
+
+    void add(int key, int delta) {
+        int slot = slot(key);
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            size++;
+        }
+        counts[slot] += delta;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Оставляет для ключа наибольшее из текущего и переданного значений.
+     */
+    void max(int key, int value) {
+        int slot = slot(key);
+        if (keys[slot] == FREE) {
+            add(key, value);
+        } else if (counts[slot] < value) {
+            counts[slot] = value;
+        }
+    }
+
+    void addAll(IntCounter other) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            if (other.keys[slot] != FREE) {
+                add(other.keys[slot], other.counts[slot]);
+            }
+        }
+    }
+
+    int get(int key) {
+        int slot = slot(key);
+        return keys[slot] == FREE ? 0 : counts[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int[] keys() {
+        int[] result = new int[size];
+        int index = 0;
+        for (int key : keys) {
+            if (key != FREE) {
+                result[index++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Отбирает limit ключей с наибольшими счётчиками через min-кучу размера limit,
+     * при равных счётчиках выигрывает меньший ключ.
+     * В куче лежат long: счётчик в старших битах, инвертированный ключ в младших.
+     */
+    int[] top(int limit) {
+        long[] heap = new long[Math.min(limit, size)];
+        int heapSize = 0;
+        for (int slot = 0; slot < keys.length && heap.length > 0; slot++) {
+            if (keys[slot] == FREE) {
+                continue;
+            }
+            long score = ((long) counts[slot] << 32) | (Integer.MAX_VALUE - keys[slot]);
+            if (heapSize < heap.length) {
+                heap[heapSize] = score;
+                siftUp(heap, heapSize++);
+            } else if (score > heap[0]) {
+                heap[0] = score;
+                siftDown(heap, heapSize);
+            }
+        }
+        Arrays.sort(heap, 0, heapSize);
+        int[] result = new int[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            result[i] = Integer.MAX_VALUE - (int) heap[heapSize - 1 - i];
+        }
+        return result;
+    }
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static void siftUp(long[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent] <= heap[index]) {
+                return;
+            }
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int index = 0;
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && heap[left] < heap[smallest]) {
+                smallest = left;
+            }
+            if (right < size && heap[right] < heap[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(heap, index, smallest);
+            index = smallest;
+        }
+    }
+
+    private static void swap(long[] heap, int i, int j) {
+        long tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+}
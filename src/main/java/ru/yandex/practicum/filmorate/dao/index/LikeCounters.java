@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики лайков фильмов для конкурентной записи без общей блокировки.
+ * Число лайков фильма — {@link LongAdder}: под нагрузкой он сам раскладывает приращения по ячейкам потоков,
+ * поэтому шквал лайков одного фильма не упирается в одну ячейку памяти. Сумма читается без блокировок.
+ * Повторные лайки и дизлайки отсеивает владелец.
+ */
+class LikeCounters {
+
+    private final Map<Integer, LongAdder> counts = new ConcurrentHashMap<>();
+
+    void increment(int filmId) {
+        counts.computeIfAbsent(filmId, id -> new LongAdder()).increment();
+    }
+
+    void decrement(int filmId) {
+        counts.computeIfAbsent(filmId, id -> new LongAdder()).decrement();
+    }
+
+    int count(int filmId) {
+        LongAdder counter = counts.get(filmId);
+        return counter == null ? 0 : (int) counter.sum();
+    }
+
+    void clear() {
+        counts.clear();
+    }
+}
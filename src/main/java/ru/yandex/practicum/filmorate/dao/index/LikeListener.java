@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+/**
+ * Получатель изменений таблицы LIKES. Вызывается после того, как лайк фактически записан или удалён.
+ */
+public interface LikeListener {
+
+    void onLikeAdded(int filmId, int userId);
+
+    void onLikeRemoved(int filmId, int userId);
+}
@@ -0,0 +1,334 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Разреженная матрица лайков пользователь × фильм в памяти. Хранится в двух направлениях:
+ * фильмы каждого пользователя и пользователи каждого фильма, каждая строка — сжатое множество {@link RoaringIntSet}.
+ * Отсюда проверяется, лайкнул ли пользователь фильм, без запросов к LIKES, а число лайков фильма
+ * читается без блокировок из {@link LikeCounters}.
+ * По ней же подбираются рекомендации: ищутся пользователи с наиболее похожим набором лайков (мера Жаккара),
+ * и их фильмы, которых у пользователя ещё нет, ранжируются по суммарной похожести.
+ * <p>
+ * Среди слушателей лайков матрица идёт первой: рейтинги популярности читают из неё число лайков.
+ * <p>
+ * Лайк берёт общую блокировку на чтение и монитор одной из {@link #STRIPES} полос, выбранной по пользователю,
+ * поэтому лайки одного популярного фильма от разных пользователей не ждут друг друга. Повторный лайк или дизлайк
+ * той же пары отсеивается по строке пользователя внутри его полосы и счётчик не меняет.
+ * Строки фильмов нужны только рекомендациям, поэтому лайк не трогает их, а дописывает изменение в журнал полосы;
+ * журналы применяются под блокировкой на запись перед расчётом рекомендаций или когда журнал полосы переполнен.
+ * Блокировку на запись берут также перезагрузка и рост массива строк пользователей.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class LikeMatrix implements LikeListener {
+
+    // Сколько рекомендаций хранится в кэше на пользователя, больше этого числа выдать нельзя
+    public static final int MAX_RECOMMENDATIONS = 100;
+    // Сколько самых похожих пользователей учитывается при ранжировании фильмов
+    private static final int NEIGHBOURS = 20;
+    // Фильмы пользователя делятся между задачами fork/join порциями не меньше этой
+    private static final int SPLIT_THRESHOLD = 16;
+    // Похожесть переводится в целые числа, чтобы считать её в IntCounter
+    private static final int SIMILARITY_SCALE = 1 << 16;
+    private static final int STRIPES = 64;
+    // После стольких изменений в журнале полосы строки фильмов догоняются, не дожидаясь рекомендаций
+    private static final int JOURNAL_LIMIT = 4096;
+    private static final int[] EMPTY = new int[0];
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RoaringAdjacency filmsByUser = new RoaringAdjacency();
+    // Отстаёт от filmsByUser на журналы полос
+    private final RoaringAdjacency usersByFilm = new RoaringAdjacency();
+    private final LikeCounters counters = new LikeCounters();
+    private final Map<Integer, int[]> recommendations = new ConcurrentHashMap<>();
+    private final Stripe[] stripes = newStripes();
+
+    @PostConstruct
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            filmsByUser.clear();
+            usersByFilm.clear();
+            counters.clear();
+            recommendations.clear();
+            for (Stripe stripe : stripes) {
+                stripe.journalSize = 0;
+            }
+            jdbcTemplate.query("SELECT FILM_ID, USER_ID FROM PUBLIC.LIKES;", rs -> {
+                int filmId = rs.getInt("FILM_ID");
+                int userId = rs.getInt("USER_ID");
+                if (filmsByUser.add(userId, filmId)) {
+                    usersByFilm.add(filmId, userId);
+                    counters.increment(filmId);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Матрица лайков загружена");
+    }
+
+    @Override
+    public void onLikeAdded(int filmId, int userId) {
+        boolean journalFull;
+        lockUserRows(userId);
+        try {
+            Stripe stripe = stripe(userId);
+            synchronized (stripe) {
+                if (!filmsByUser.add(userId, filmId)) {
+                    return;
+                }
+                counters.increment(filmId);
+                journalFull = stripe.append(pair(filmId, userId));
+            }
+            recommendations.remove(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (journalFull) {
+            applyJournals();
+        }
+    }
+
+    @Override
+    public void onLikeRemoved(int filmId, int userId) {
+        boolean journalFull;
+        lock.readLock().lock();
+        try {
+            Stripe stripe = stripe(userId);
+            synchronized (stripe) {
+                if (!filmsByUser.remove(userId, filmId)) {
+                    return;
+                }
+                counters.decrement(filmId);
+                // Удаление записывается в журнал инвертированной парой, у неё всегда отрицательный знак
+                journalFull = stripe.append(~pair(filmId, userId));
+            }
+            recommendations.remove(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (journalFull) {
+            applyJournals();
+        }
+    }
+
+    public int getLikeCount(int filmId) {
+        return counters.count(filmId);
+    }
+
+    public boolean hasLiked(int userId, int filmId) {
+        lock.readLock().lock();
+        try {
+            synchronized (stripe(userId)) {
+                return filmsByUser.contains(userId, filmId);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Сколько фильмов лайкнули оба пользователя.
+     */
+    public int getCommonLikes(int userId, int otherId) {
+        // Две полосы берутся в порядке номера, а лайк берёт только одну, поэтому взаимной блокировки нет
+        Stripe first = stripe(Math.min(userId & (STRIPES - 1), otherId & (STRIPES - 1)));
+        Stripe second = stripe(Math.max(userId & (STRIPES - 1), otherId & (STRIPES - 1)));
+        lock.readLock().lock();
+        try {
+            synchronized (first) {
+                synchronized (second) {
+                    return filmsByUser.row(userId).andCardinality(filmsByUser.row(otherId));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает до limit id фильмов, рекомендованных пользователю, от наиболее подходящего.
+     * Результат кэшируется до изменения лайков этого пользователя; лайки соседей кэш не сбрасывают.
+     */
+    public int[] recommendFilms(int userId, int limit) {
+        int[] cached = recommendations.get(userId);
+        if (cached == null) {
+            lock.writeLock().lock();
+            try {
+                applyJournalsLocked();
+                cached = recommendations.computeIfAbsent(userId, this::computeRecommendations);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return cached.length <= limit ? cached.clone() : Arrays.copyOf(cached, limit);
+    }
+
+    /**
+     * Берёт блокировку на чтение, заранее вырастив массив строк под пользователя:
+     * под блокировкой на чтение массив строк не заменяется, меняются только его ячейки.
+     */
+    private void lockUserRows(int userId) {
+        lock.readLock().lock();
+        while (!filmsByUser.fits(userId)) {
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                filmsByUser.ensureCapacity(userId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            lock.readLock().lock();
+        }
+    }
+
+    private void applyJournals() {
+        lock.writeLock().lock();
+        try {
+            applyJournalsLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Переносит изменения из журналов полос в строки фильмов. Пара всегда попадает в журнал одной полосы,
+     * поэтому изменения одной пары применяются в том порядке, в каком случились.
+     */
+    private void applyJournalsLocked() {
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < stripe.journalSize; i++) {
+                long entry = stripe.journal[i];
+                if (entry >= 0) {
+                    usersByFilm.add((int) (entry >>> 32), (int) entry);
+                } else {
+                    usersByFilm.remove((int) (~entry >>> 32), (int) ~entry);
+                }
+            }
+            stripe.journalSize = 0;
+        }
+    }
+
+    private Stripe stripe(int userId) {
+        return stripes[userId & (STRIPES - 1)];
+    }
+
+    private static long pair(int filmId, int userId) {
+        return ((long) filmId << 32) | (userId & 0xFFFFFFFFL);
+    }
+
+    private static Stripe[] newStripes() {
+        Stripe[] stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        return stripes;
+    }
+
+    private int[] computeRecommendations(int userId) {
+        int likedCount = filmsByUser.size(userId);
+        if (likedCount == 0) {
+            return EMPTY;
+        }
+        IntCounter overlaps = ForkJoinPool.commonPool()
+                .invoke(new OverlapTask(userId, filmsByUser.row(userId).toIntArray(), 0, likedCount));
+
+        IntCounter similarities = new IntCounter(overlaps.size());
+        for (int otherId : overlaps.keys()) {
+            int overlap = overlaps.get(otherId);
+            int union = likedCount + filmsByUser.size(otherId) - overlap;
+            similarities.add(otherId, (int) ((long) overlap * SIMILARITY_SCALE / union));
+        }
+
+        IntCounter scores = new IntCounter(NEIGHBOURS * 8);
+        RoaringIntSet liked = filmsByUser.row(userId);
+        for (int neighbourId : similarities.top(NEIGHBOURS)) {
+            int similarity = similarities.get(neighbourId);
+            filmsByUser.row(neighbourId).forEach(filmId -> {
+                if (!liked.contains(filmId)) {
+                    scores.add(filmId, similarity);
+                }
+            });
+        }
+        return scores.top(MAX_RECOMMENDATIONS);
+    }
+
+    /**
+     * Считает, сколько общих лайков у пользователя с каждым другим пользователем,
+     * обходя пользователей его фильмов. Диапазон фильмов делится пополам, пока не станет меньше порога.
+     */
+    private class OverlapTask extends RecursiveTask<IntCounter> {
+        private final int userId;
+        private final int[] films;
+        private final int from;
+        private final int to;
+
+        OverlapTask(int userId, int[] films, int from, int to) {
+            this.userId = userId;
+            this.films = films;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected IntCounter compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                OverlapTask left = new OverlapTask(userId, films, from, middle);
+                left.fork();
+                IntCounter right = new OverlapTask(userId, films, middle, to).compute();
+                IntCounter result = left.join();
+                result.addAll(right);
+                return result;
+            }
+            IntCounter counter = new IntCounter((to - from) * 8);
+            for (int i = from; i < to; i++) {
+                usersByFilm.row(films[i]).forEach(otherId -> {
+                    if (otherId != userId) {
+                        counter.increment(otherId);
+                    }
+                });
+            }
+            return counter;
+        }
+    }
+
+    /**
+     * Полоса пользователей: её монитор охраняет строки filmsByUser пользователей полосы и журнал
+     * ещё не применённых к usersByFilm изменений — пары (фильм, пользователь), удаления инвертированы.
+     */
+    private static class Stripe {
+        private long[] journal = new long[16];
+        private int journalSize;
+
+        /**
+         * @return true, если журнал переполнен и его пора применить
+         */
+        boolean append(long entry) {
+            if (journalSize == journal.length) {
+                journal = Arrays.copyOf(journal, journalSize * 2);
+            }
+            journal[journalSize++] = entry;
+            return journalSize >= JOURNAL_LIMIT;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.Arrays;
+
+/**
+ * Списки смежности на сжатых множествах: для каждого неотрицательного int-ключа хранится {@link RoaringIntSet}.
+ * Как и {@link SortedIntAdjacency}, массив ключей растёт по мере необходимости и рассчитан на плотные id.
+ * Синхронизацию обеспечивает владелец.
+ */
+class RoaringAdjacency {
+
+    private static final RoaringIntSet EMPTY = new RoaringIntSet();
+    private static final int INITIAL_CAPACITY = 16;
+
+    private RoaringIntSet[] rows = new RoaringIntSet[INITIAL_CAPACITY];
+
+    void clear() {
+        rows = new RoaringIntSet[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return true, если строку ключа можно добавить без роста массива
+     */
+    boolean fits(int key) {
+        return key < rows.length;
+    }
+
+    void ensureCapacity(int key) {
+        if (key >= rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(key + 1, rows.length * 2));
+        }
+    }
+
+    boolean add(int key, int value) {
+        ensureCapacity(key);
+        RoaringIntSet row = rows[key];
+        if (row == null) {
+            row = new RoaringIntSet();
+            rows[key] = row;
+        }
+        return row.add(value);
+    }
+
+    boolean remove(int key, int value) {
+        RoaringIntSet row = find(key);
+        if (row == null || !row.remove(value)) {
+            return false;
+        }
+        if (row.cardinality() == 0) {
+            rows[key] = null;
+        }
+        return true;
+    }
+
+    boolean contains(int key, int value) {
+        RoaringIntSet row = find(key);
+        return row != null && row.contains(value);
+    }
+
+    int size(int key) {
+        RoaringIntSet row = find(key);
+        return row == null ? 0 : row.cardinality();
+    }
+
+    /**
+     * Множество ключа без копирования, только для чтения; для отсутствующего ключа — общее пустое.
+     */
+    RoaringIntSet row(int key) {
+        RoaringIntSet row = find(key);
+        return row == null ? EMPTY : row;
+    }
+
+    private RoaringIntSet find(int key) {
+        return key >= 0 && key < rows.length ? rows[key] : null;
+    }
+}
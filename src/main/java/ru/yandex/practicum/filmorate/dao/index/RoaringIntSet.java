@@ -0,0 +1,304 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Сжатое множество неотрицательных int в духе Roaring. Значения делятся на блоки по старшим 16 битам,
+ * в блоке хранятся младшие 16 бит: отсортированным массивом char, пока их не больше {@link #ARRAY_LIMIT},
+ * и битовой картой из 1024 слов, когда больше. Так редкие значения занимают по два байта,
+ * а плотные — по биту. Мощность хранится отдельно и читается за O(1). Синхронизацию обеспечивает владелец.
+ * <p>
+ * Блок сам хранит свой ключ и размер, чтобы не держать на каждое множество ещё два массива:
+ * у массива это два первых char, у битовой карты — последнее слово.
+ */
+final class RoaringIntSet {
+
+    // При таком числе значений массив блока занимает столько же, сколько битовая карта
+    static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final int HEADER = 2;
+    private static final int INITIAL_ARRAY_CAPACITY = HEADER + 4;
+
+    // Блоки по возрастанию ключа: char[] или long[], значимы первые blockCount элементов
+    private Object[] blocks = new Object[1];
+    private int blockCount;
+    private int cardinality;
+
+    boolean add(int value) {
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int index = findBlock(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertBlock(index, newArrayBlock(key));
+        }
+        Object block = blocks[index];
+        int size = size(block);
+        if (block instanceof long[]) {
+            long[] words = (long[]) block;
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= bit;
+        } else {
+            char[] values = (char[]) block;
+            int position = Arrays.binarySearch(values, HEADER, HEADER + size, low);
+            if (position >= 0) {
+                return false;
+            }
+            if (size == ARRAY_LIMIT) {
+                long[] words = toBitmap(values);
+                words[low >>> 6] |= 1L << low;
+                block = words;
+            } else {
+                int insertAt = -position - 1;
+                if (HEADER + size == values.length) {
+                    values = Arrays.copyOf(values, HEADER + Math.min(size * 2, ARRAY_LIMIT));
+                }
+                System.arraycopy(values, insertAt, values, insertAt + 1, HEADER + size - insertAt);
+                values[insertAt] = low;
+                block = values;
+            }
+            blocks[index] = block;
+        }
+        setSize(block, size + 1);
+        cardinality++;
+        return true;
+    }
+
+    boolean remove(int value) {
+        char low = (char) value;
+        int index = findBlock((char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        Object block = blocks[index];
+        int size = size(block);
+        if (block instanceof long[]) {
+            long[] words = (long[]) block;
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            words[low >>> 6] &= ~bit;
+            if (size - 1 == ARRAY_LIMIT) {
+                block = toArray(words);
+                blocks[index] = block;
+            }
+        } else {
+            char[] values = (char[]) block;
+            int position = Arrays.binarySearch(values, HEADER, HEADER + size, low);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(values, position + 1, values, position, HEADER + size - position - 1);
+        }
+        cardinality--;
+        if (size == 1) {
+            removeBlock(index);
+        } else {
+            setSize(block, size - 1);
+        }
+        return true;
+    }
+
+    boolean contains(int value) {
+        int index = findBlock((char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object block = blocks[index];
+        if (block instanceof long[]) {
+            return (((long[]) block)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) block, HEADER, HEADER + size(block), low) >= 0;
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Обходит значения по возрастанию.
+     */
+    void forEach(IntConsumer consumer) {
+        for (int i = 0; i < blockCount; i++) {
+            Object block = blocks[i];
+            int high = key(block) << 16;
+            if (block instanceof long[]) {
+                long[] words = (long[]) block;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    for (long word = words[w]; word != 0; word &= word - 1) {
+                        consumer.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                    }
+                }
+            } else {
+                char[] values = (char[]) block;
+                int end = HEADER + size(block);
+                for (int j = HEADER; j < end; j++) {
+                    consumer.accept(high | values[j]);
+                }
+            }
+        }
+    }
+
+    int[] toIntArray() {
+        int[] result = new int[cardinality];
+        int[] position = new int[1];
+        forEach(value -> result[position[0]++] = value);
+        return result;
+    }
+
+    /**
+     * Мощность пересечения с other без построения самого пересечения.
+     */
+    int andCardinality(RoaringIntSet other) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < blockCount && j < other.blockCount) {
+            char key = key(blocks[i]);
+            char otherKey = key(other.blocks[j]);
+            if (key < otherKey) {
+                i++;
+            } else if (key > otherKey) {
+                j++;
+            } else {
+                count += andCardinality(blocks[i], other.blocks[j]);
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private static int andCardinality(Object first, Object second) {
+        int count = 0;
+        if (first instanceof long[] && second instanceof long[]) {
+            long[] firstWords = (long[]) first;
+            long[] secondWords = (long[]) second;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                count += Long.bitCount(firstWords[w] & secondWords[w]);
+            }
+            return count;
+        }
+        if (first instanceof long[] || second instanceof long[]) {
+            long[] words = (long[]) (first instanceof long[] ? first : second);
+            char[] values = (char[]) (first instanceof long[] ? second : first);
+            int end = HEADER + size(values);
+            for (int k = HEADER; k < end; k++) {
+                if ((words[values[k] >>> 6] & (1L << values[k])) != 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        char[] firstValues = (char[]) first;
+        char[] secondValues = (char[]) second;
+        int firstEnd = HEADER + size(first);
+        int secondEnd = HEADER + size(second);
+        int i = HEADER;
+        int j = HEADER;
+        while (i < firstEnd && j < secondEnd) {
+            if (firstValues[i] < secondValues[j]) {
+                i++;
+            } else if (firstValues[i] > secondValues[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private int findBlock(char key) {
+        // Блоков почти всегда один или несколько, а id растут, поэтому последний проверяется первым
+        if (blockCount > 0 && key(blocks[blockCount - 1]) == key) {
+            return blockCount - 1;
+        }
+        int low = 0;
+        int high = blockCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char middleKey = key(blocks[middle]);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertBlock(int index, Object block) {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+        }
+        System.arraycopy(blocks, index, blocks, index + 1, blockCount - index);
+        blocks[index] = block;
+        blockCount++;
+    }
+
+    private void removeBlock(int index) {
+        System.arraycopy(blocks, index + 1, blocks, index, blockCount - index - 1);
+        blockCount--;
+        blocks[blockCount] = null;
+    }
+
+    private static char[] newArrayBlock(char key) {
+        char[] values = new char[INITIAL_ARRAY_CAPACITY];
+        values[1] = key;
+        return values;
+    }
+
+    private static char key(Object block) {
+        return block instanceof long[]
+                ? (char) (((long[]) block)[BITMAP_WORDS] >>> 32)
+                : ((char[]) block)[1];
+    }
+
+    private static int size(Object block) {
+        return block instanceof long[]
+                ? (int) ((long[]) block)[BITMAP_WORDS]
+                : ((char[]) block)[0];
+    }
+
+    private static void setSize(Object block, int size) {
+        if (block instanceof long[]) {
+            long[] words = (long[]) block;
+            words[BITMAP_WORDS] = (words[BITMAP_WORDS] & 0xFFFF_FFFF_0000_0000L) | size;
+        } else {
+            ((char[]) block)[0] = (char) size;
+        }
+    }
+
+    private static long[] toBitmap(char[] values) {
+        long[] words = new long[BITMAP_WORDS + 1];
+        int end = HEADER + size(values);
+        for (int i = HEADER; i < end; i++) {
+            words[values[i] >>> 6] |= 1L << values[i];
+        }
+        words[BITMAP_WORDS] = (long) key(values) << 32 | size(values);
+        return words;
+    }
+
+    private static char[] toArray(long[] words) {
+        char[] values = new char[HEADER + ARRAY_LIMIT];
+        int size = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                values[HEADER + size++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+            }
+        }
+        values[0] = (char) size;
+        values[1] = key(words);
+        return values;
+    }
+}
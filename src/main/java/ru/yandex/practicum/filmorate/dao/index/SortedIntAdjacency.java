@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.Arrays;
+
+/**
+ * Списки смежности на примитивах: для каждого неотрицательного int-ключа хранится отсортированный
+ * массив int-значений без повторов. Массив ключей растёт по мере необходимости, поэтому структура
+ * рассчитана на плотные id из последовательностей. Синхронизацию обеспечивает владелец.
+ */
+class SortedIntAdjacency {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[][] values = new int[INITIAL_CAPACITY][];
+    private int[] sizes = new int[INITIAL_CAPACITY];
+
+    void clear() {
+        values = new int[INITIAL_CAPACITY][];
+        sizes = new int[INITIAL_CAPACITY];
+    }
+
+    boolean add(int key, int value) {
+        ensureCapacity(key);
+        int[] row = values[key];
+        int size = sizes[key];
+        if (row == null) {
+            row = new int[4];
+            values[key] = row;
+        }
+        int position = Arrays.binarySearch(row, 0, size, value);
+        if (position >= 0) {
+            return false;
+        }
+        int insertAt = -position - 1;
+        if (size == row.length) {
+            row = Arrays.copyOf(row, size * 2);
+            values[key] = row;
+        }
+        System.arraycopy(row, insertAt, row, insertAt + 1, size - insertAt);
+        row[insertAt] = value;
+        sizes[key] = size + 1;
+        return true;
+    }
+
+    boolean remove(int key, int value) {
+        int size = size(key);
+        if (size == 0) {
+            return false;
+        }
+        int[] row = values[key];
+        int position = Arrays.binarySearch(row, 0, size, value);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(row, position + 1, row, position, size - position - 1);
+        sizes[key] = size - 1;
+        return true;
+    }
+
+    boolean contains(int key, int value) {
+        int size = size(key);
+        return size > 0 && Arrays.binarySearch(values[key], 0, size, value) >= 0;
+    }
+
+    int size(int key) {
+        return key >= 0 && key < sizes.length ? sizes[key] : 0;
+    }
+
+    /**
+     * Внутренний массив ключа без копирования, значимы только первые {@link #size(int)} элементов.
+     */
+    int[] row(int key) {
+        return size(key) == 0 ? EMPTY : values[key];
+    }
+
+    int[] copy(int key) {
+        int size = size(key);
+        return size == 0 ? EMPTY : Arrays.copyOf(values[key], size);
+    }
+
+    int keyLimit() {
+        return sizes.length;
+    }
+
+    int[] intersect(int key, int otherKey) {
+        int firstSize = size(key);
+        int secondSize = size(otherKey);
+        if (firstSize == 0 || secondSize == 0) {
+            return EMPTY;
+        }
+        int[] first = values[key];
+        int[] second = values[otherKey];
+        int[] common = new int[Math.min(firstSize, secondSize)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < firstSize && j < secondSize) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    private void ensureCapacity(int key) {
+        if (key >= values.length) {
+            int capacity = Math.max(key + 1, values.length * 2);
+            values = Arrays.copyOf(values, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+    }
+}
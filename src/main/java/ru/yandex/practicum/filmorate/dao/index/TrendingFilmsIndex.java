@@ -0,0 +1,279 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Лайки фильмов за последний час, сутки и неделю. У каждого фильма с лайками за неделю есть два кольцевых буфера:
+ * 60 поминутных корзин для часа и 168 почасовых для суток и недели, и суммы по каждому окну.
+ * Лайк попадает в текущие корзины, а устаревшие корзины обнуляет фоновая задача,
+ * поэтому запрос трендов только выбирает лучшие фильмы по готовым суммам и не обращается к LIKES.
+ * Окна сдвигаются целыми корзинами: сутки — это текущий час и 23 предыдущих, неделя — текущий час и 167 предыдущих.
+ * <p>
+ * Лайк и дизлайк только атомарно меняют текущие корзины и суммы фильма, без блокировок и без сдвига окон.
+ * Дизлайк вычитается из текущих корзин, а не из той, куда попал лайк: так не нужно помнить минуту каждого лайка.
+ * Поэтому, пока лайк и его дизлайк в разных корзинах, сумма окна может временно отличаться от числа лайков в нём,
+ * а отрицательная сумма считается нулём.
+ * <p>
+ * Окна сдвигает и забывает фильмы без лайков только фоновая задача. Перед тем как убрать фильм,
+ * она помечает его корзины, а лайк, заставший пометку, дожидается решения и при удалении корзин повторяется на новых.
+ */
+@Slf4j
+@Component
+public class TrendingFilmsIndex implements LikeListener {
+
+    private static final int MINUTES = 60;
+    private static final int HOURS = 7 * 24;
+    private static final int DAY_HOURS = 24;
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final String RECENT_LIKES_SQL = "SELECT FILM_ID, CREATED_AT FROM PUBLIC.LIKES\n" +
+            "WHERE CREATED_AT >= ?;";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long decayIntervalMs;
+    private final Clock clock;
+
+    private final Map<Integer, FilmBuckets> films = new ConcurrentHashMap<>();
+    // Минута, к которой относятся текущие корзины; меняет только фоновая задача и перезагрузка
+    private volatile int headMinute;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public TrendingFilmsIndex(JdbcTemplate jdbcTemplate,
+                              @Value("${filmorate.films.trending.decay-interval-ms:1000}") long decayIntervalMs) {
+        this(jdbcTemplate, decayIntervalMs, Clock.systemUTC());
+    }
+
+    TrendingFilmsIndex(JdbcTemplate jdbcTemplate, long decayIntervalMs, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.decayIntervalMs = decayIntervalMs;
+        this.clock = clock;
+        this.headMinute = currentMinute();
+    }
+
+    @PostConstruct
+    public void start() {
+        reload();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "trending-decay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::decayQuietly, decayIntervalMs, decayIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Лайки, пришедшие во время перезагрузки, могут потеряться, поэтому она выполняется при старте и в тестах.
+     */
+    public synchronized void reload() {
+        films.clear();
+        int head = currentMinute();
+        headMinute = head;
+        long from = (long) (hourOf(head) - HOURS + 1) * MINUTES * MINUTE_MS;
+        jdbcTemplate.query(RECENT_LIKES_SQL, rs -> {
+            int minute = (int) (rs.getTimestamp("CREATED_AT").getTime() / MINUTE_MS);
+            change(rs.getInt("FILM_ID"), Math.min(minute, head), head, 1);
+        }, new Timestamp(from));
+        log.debug("Тренды загружены, фильмов с лайками за неделю: {}", films.size());
+    }
+
+    @Override
+    public void onLikeAdded(int filmId, int userId) {
+        int head = headMinute;
+        change(filmId, head, head, 1);
+    }
+
+    @Override
+    public void onLikeRemoved(int filmId, int userId) {
+        int head = headMinute;
+        change(filmId, head, head, -1);
+    }
+
+    /**
+     * Первые count фильмов по числу лайков за окно, при равенстве — по возрастанию id.
+     * В выдачу попадают только фильмы, у которых есть лайки за это окно.
+     */
+    public List<Integer> getTopFilmIds(TrendingWindow window, int count) {
+        Comparator<Map.Entry<Integer, Integer>> order = Map.Entry.<Integer, Integer>comparingByValue()
+                .thenComparing(Map.Entry.<Integer, Integer>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<Integer, Integer>> top = new PriorityQueue<>(order);
+        for (Map.Entry<Integer, FilmBuckets> entry : films.entrySet()) {
+            int likes = entry.getValue().total(window);
+            if (likes == 0) {
+                continue;
+            }
+            Map.Entry<Integer, Integer> candidate = Map.entry(entry.getKey(), likes);
+            if (top.size() < count) {
+                top.add(candidate);
+            } else if (order.compare(candidate, top.peek()) > 0) {
+                top.poll();
+                top.add(candidate);
+            }
+        }
+        List<Integer> ids = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            ids.add(top.poll().getKey());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    /**
+     * Сдвигает окна к текущей минуте: обнуляет корзины, которые из них вышли,
+     * и забывает фильмы без лайков за неделю.
+     */
+    synchronized void decay() {
+        int now = currentMinute();
+        int from = headMinute;
+        if (now <= from) {
+            return;
+        }
+        // Новые лайки сразу идут в корзины новой минуты, а её корзину освобождает обход ниже
+        headMinute = now;
+        for (Map.Entry<Integer, FilmBuckets> entry : films.entrySet()) {
+            FilmBuckets buckets = entry.getValue();
+            buckets.advance(from, now);
+            if (buckets.isEmpty()) {
+                buckets.retired = true;
+                if (buckets.isEmpty()) {
+                    films.remove(entry.getKey(), buckets);
+                } else {
+                    buckets.retired = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Добавляет delta лайков фильма, поставленных в минуту minute, при текущей минуте head.
+     * Дизлайк фильма без лайков за неделю ничего не меняет.
+     */
+    private void change(int filmId, int minute, int head, int delta) {
+        while (true) {
+            FilmBuckets buckets = delta > 0
+                    ? films.computeIfAbsent(filmId, id -> new FilmBuckets())
+                    : films.get(filmId);
+            if (buckets == null) {
+                return;
+            }
+            buckets.change(minute, head, delta);
+            if (!buckets.retired) {
+                return;
+            }
+            // Фоновая задача решает, убрать ли корзины; если убрала, изменение ушло в забытые корзины
+            while (buckets.retired && films.get(filmId) == buckets) {
+                Thread.onSpinWait();
+            }
+            if (films.get(filmId) == buckets) {
+                return;
+            }
+        }
+    }
+
+    private int currentMinute() {
+        return (int) (clock.millis() / MINUTE_MS);
+    }
+
+    private void decayQuietly() {
+        try {
+            decay();
+        } catch (RuntimeException e) {
+            log.error("Ошибка при сдвиге окон трендов", e);
+        }
+    }
+
+    private static int hourOf(int minute) {
+        return minute / MINUTES;
+    }
+
+    /**
+     * Корзины одного фильма. Лайки меняют корзины и суммы атомарно, сдвигает окна только фоновая задача.
+     * Сумма окна всегда равна сумме его корзин, поэтому при сдвиге из неё вычитается содержимое вышедших корзин.
+     */
+    private static class FilmBuckets {
+        private final AtomicIntegerArray minutes = new AtomicIntegerArray(MINUTES);
+        private final AtomicIntegerArray hours = new AtomicIntegerArray(HOURS);
+        private final AtomicInteger hour = new AtomicInteger();
+        private final AtomicInteger day = new AtomicInteger();
+        private final AtomicInteger week = new AtomicInteger();
+        // Фоновая задача собирается убрать корзины, если в них так и нет лайков
+        private volatile boolean retired;
+
+        /**
+         * Добавляет delta лайков, поставленных в минуту minute, при текущей минуте head.
+         */
+        void change(int minute, int head, int delta) {
+            if (minute > head - MINUTES) {
+                minutes.addAndGet(minute % MINUTES, delta);
+                hour.addAndGet(delta);
+            }
+            int likeHour = hourOf(minute);
+            int headHour = hourOf(head);
+            if (likeHour > headHour - HOURS) {
+                hours.addAndGet(likeHour % HOURS, delta);
+                week.addAndGet(delta);
+                if (likeHour > headHour - DAY_HOURS) {
+                    day.addAndGet(delta);
+                }
+            }
+        }
+
+        /**
+         * Сдвигает окна с минуты fromMinute на toMinute: корзины, вышедшие из окна, вычитаются из его суммы,
+         * а корзины новых минут и часов обнуляются.
+         */
+        void advance(int fromMinute, int toMinute) {
+            // Корзина новой минуты до этого хранила минуту часом раньше, которая как раз вышла из окна часа
+            for (int minute = Math.max(fromMinute + 1, toMinute - MINUTES + 1); minute <= toMinute; minute++) {
+                hour.addAndGet(-minutes.getAndSet(minute % MINUTES, 0));
+            }
+            int fromHour = hourOf(fromMinute);
+            int toHour = hourOf(toMinute);
+            // Из суток выходят часы, которые в них были и отстоят от нового часа на сутки и больше
+            for (int h = fromHour + 1; h <= Math.min(toHour, fromHour + DAY_HOURS); h++) {
+                day.addAndGet(-hours.get((h - DAY_HOURS) % HOURS));
+            }
+            for (int h = Math.max(fromHour + 1, toHour - HOURS + 1); h <= toHour; h++) {
+                week.addAndGet(-hours.getAndSet(h % HOURS, 0));
+            }
+        }
+
+        boolean isEmpty() {
+            return hour.get() <= 0 && day.get() <= 0 && week.get() <= 0;
+        }
+
+        int total(TrendingWindow window) {
+            switch (window) {
+                case HOUR:
+                    return Math.max(0, hour.get());
+                case DAY:
+                    return Math.max(0, day.get());
+                default:
+                    return Math.max(0, week.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Логирует, сколько JDBC-запросов и времени потребовала обработка HTTP-запроса.
+ * Запросы, выполненные в отдельном потоке потоковой выдачи, сюда не попадают.
+ */
+@Slf4j
+class RequestStatementInterceptor implements HandlerInterceptor {
+
+    private static final String STATEMENTS_ATTRIBUTE = RequestStatementInterceptor.class.getName() + ".statements";
+    private static final String STARTED_ATTRIBUTE = RequestStatementInterceptor.class.getName() + ".started";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(STATEMENTS_ATTRIBUTE, StatementCounter.current());
+        request.setAttribute(STARTED_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object statementsBefore = request.getAttribute(STATEMENTS_ATTRIBUTE);
+        Object started = request.getAttribute(STARTED_ATTRIBUTE);
+        if (statementsBefore == null || started == null) {
+            return;
+        }
+        log.info("Запрос '{} {}' выполнил SQL-запросов: {} за {} мс",
+                request.getMethod(), request.getRequestURI(),
+                StatementCounter.current() - (long) statementsBefore,
+                (System.nanoTime() - (long) started) / 1_000_000);
+    }
+}
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+/**
+ * Счётчики выполненных JDBC-запросов и фиксаций транзакций текущего потока. Значения только растут,
+ * поэтому число запросов за участок кода считается как разность двух показаний.
+ * Запрос в режиме автофиксации считается отдельной фиксацией.
+ */
+public final class StatementCounter {
+
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[2]);
+
+    private StatementCounter() {
+    }
+
+    public static long current() {
+        return COUNT.get()[0];
+    }
+
+    public static long currentCommits() {
+        return COUNT.get()[1];
+    }
+
+    static void increment() {
+        COUNT.get()[0]++;
+    }
+
+    static void incrementCommits() {
+        COUNT.get()[1]++;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Обёртка над источником данных, которая увеличивает {@link StatementCounter} при каждом выполнении запроса
+ * и каждой фиксации транзакции. Пакет, отправленный через executeBatch, считается одним запросом.
+ */
+public class StatementCountingDataSource extends DelegatingDataSource {
+
+    public StatementCountingDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrapConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrapConnection(super.getConnection(username, password));
+    }
+
+    private static Connection wrapConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(StatementCountingDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if ("commit".equals(method.getName())) {
+                        StatementCounter.incrementCommits();
+                    } else if (result instanceof CallableStatement) {
+                        return wrapStatement(connection, result, CallableStatement.class);
+                    } else if (result instanceof PreparedStatement) {
+                        return wrapStatement(connection, result, PreparedStatement.class);
+                    } else if (result instanceof Statement) {
+                        return wrapStatement(connection, result, Statement.class);
+                    }
+                    return result;
+                });
+    }
+
+    private static Object wrapStatement(Connection connection, Object statement, Class<?> type) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().startsWith("execute")) {
+                StatementCounter.increment();
+                if (connection.getAutoCommit()) {
+                    StatementCounter.incrementCommits();
+                }
+            }
+            return invoke(statement, method, args);
+        };
+        return Proxy.newProxyInstance(StatementCountingDataSource.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.StorageOperationStats;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Статистика вызовов методов хранилищ: число вызовов и ошибок, гистограмма задержек
+ * и число JDBC-запросов, включая запросы вложенных вызовов других хранилищ.
+ */
+@Component
+public class StorageMetrics {
+
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    public void record(String operation, long nanos, long statements, boolean failed) {
+        OperationMetrics metrics = operations.computeIfAbsent(operation, name -> new OperationMetrics());
+        metrics.latency.record(nanos / 1000);
+        metrics.statements.add(statements);
+        if (failed) {
+            metrics.errors.increment();
+        }
+    }
+
+    public List<StorageOperationStats> getStats() {
+        return operations.entrySet().stream()
+                .map(entry -> toStats(entry.getKey(), entry.getValue()))
+                .sorted((a, b) -> a.getOperation().compareTo(b.getOperation()))
+                .collect(Collectors.toList());
+    }
+
+    public void reset() {
+        operations.clear();
+    }
+
+    private static StorageOperationStats toStats(String operation, OperationMetrics metrics) {
+        long calls = metrics.latency.getCount();
+        long statements = metrics.statements.sum();
+        return new StorageOperationStats(
+                operation,
+                calls,
+                metrics.errors.sum(),
+                statements,
+                calls == 0 ? 0 : (double) statements / calls,
+                toMillis(calls == 0 ? 0 : metrics.latency.getTotalMicros() / calls),
+                toMillis(metrics.latency.getPercentileMicros(50)),
+                toMillis(metrics.latency.getPercentileMicros(90)),
+                toMillis(metrics.latency.getPercentileMicros(99)),
+                toMillis(metrics.latency.getMaxMicros()));
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static class OperationMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+    }
+}
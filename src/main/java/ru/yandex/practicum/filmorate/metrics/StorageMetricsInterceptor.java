@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Замеряет вызовы методов, объявленных в интерфейсах хранилищ, и записывает их в {@link StorageMetrics}
+ * под именем вида "FilmStorage.getFilms".
+ */
+@RequiredArgsConstructor
+class StorageMetricsInterceptor implements MethodInterceptor {
+
+    private final StorageMetrics storageMetrics;
+    private final List<Class<?>> storageInterfaces;
+    private final Map<Method, String> operationNames = new ConcurrentHashMap<>();
+
+    boolean isStorageMethod(Method method, Class<?> targetClass) {
+        return findOperationName(method, targetClass).isPresent();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String operation = operationNames.computeIfAbsent(invocation.getMethod(), method ->
+                findOperationName(method, invocation.getThis().getClass()).orElse(method.getName()));
+        long statementsBefore = StatementCounter.current();
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = invocation.proceed();
+            failed = false;
+            return result;
+        } finally {
+            storageMetrics.record(operation, System.nanoTime() - started,
+                    StatementCounter.current() - statementsBefore, failed);
+        }
+    }
+
+    private Optional<String> findOperationName(Method method, Class<?> targetClass) {
+        for (Class<?> storageInterface : storageInterfaces) {
+            if (targetClass == null || !storageInterface.isAssignableFrom(targetClass)) {
+                continue;
+            }
+            try {
+                storageInterface.getMethod(method.getName(), method.getParameterTypes());
+                return Optional.of(storageInterface.getSimpleName() + "." + method.getName());
+            } catch (NoSuchMethodException ignored) {
+                // метод не из этого интерфейса
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class CursorPage<T> {
+    List<T> items;
+    Integer nextCursor;
+}
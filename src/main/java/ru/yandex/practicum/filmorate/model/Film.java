@@ -1,7 +1,11 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import ru.yandex.practicum.filmorate.validator.NotEarlierTheFirstFilm;
 
 import javax.validation.constraints.Min;
@@ -10,6 +14,7 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.time.LocalDate;
 import java.util.LinkedHashSet;
+import java.util.Set;
 
 @Data
 @Builder
@@ -26,9 +31,15 @@ public class Film {
     private int duration;
     @NotNull
     private Mpa mpa;
-    private LinkedHashSet<Genre> genres;
-
-    public void addGenre(Genre genre) {
-        genres.add(genre);
-    }
+    // У фильмов из хранилища это общий неизменяемый набор из справочника
+    @JsonDeserialize(as = LinkedHashSet.class)
+    private Set<Genre> genres;
+    // Число лайков из индекса в памяти, в запросах клиента игнорируется
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @EqualsAndHashCode.Exclude
+    private int likes;
+    // Номер версии строки в базе, из него строится ETag
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long version;
 }
\ No newline at end of file
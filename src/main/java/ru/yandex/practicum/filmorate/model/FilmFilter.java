@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.Set;
+
+/**
+ * Условия выборки фильмов: жанры и рейтинги объединяются через ИЛИ внутри своей группы,
+ * группы и диапазон годов выпуска — через И. Пустое множество или null означает отсутствие условия.
+ */
+@Value
+@Builder(toBuilder = true)
+public class FilmFilter {
+    @Builder.Default
+    Set<Integer> genreIds = Set.of();
+    @Builder.Default
+    Set<Integer> mpaIds = Set.of();
+    Integer yearFrom;
+    Integer yearTo;
+    boolean sortByPopularity;
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class FilmImportResult {
+    private int received;
+    private int imported;
+    private List<FilmImportError> errors = new ArrayList<>();
+
+    public void addError(int index, String error) {
+        errors.add(new FilmImportError(index, error));
+    }
+}
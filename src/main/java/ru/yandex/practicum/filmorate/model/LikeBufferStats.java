@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+@Value
+public class LikeBufferStats {
+    boolean enabled;
+    int queueDepth;
+    int capacity;
+    long flushCount;
+    long flushedEvents;
+    long failedEvents;
+    long droppedEvents;
+    long lastFlushMillis;
+    long maxFlushMillis;
+    long avgFlushMillis;
+}
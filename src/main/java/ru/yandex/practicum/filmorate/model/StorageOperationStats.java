@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+@Value
+public class StorageOperationStats {
+    String operation;
+    long calls;
+    long errors;
+    long statements;
+    double statementsPerCall;
+    double avgMillis;
+    double p50Millis;
+    double p90Millis;
+    double p99Millis;
+    double maxMillis;
+}
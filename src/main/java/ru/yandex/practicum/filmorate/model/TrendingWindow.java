@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Окно, за которое считаются лайки в выдаче трендовых фильмов.
+ */
+public enum TrendingWindow {
+    HOUR("1h"),
+    DAY("24h"),
+    WEEK("7d");
+
+    private final String value;
+
+    TrendingWindow(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static Optional<TrendingWindow> of(String value) {
+        return Arrays.stream(values())
+                .filter(window -> window.value.equals(value))
+                .findFirst();
+    }
+}
@@ -1,7 +1,9 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 import javax.validation.constraints.*;
 import java.time.LocalDate;
@@ -21,5 +23,9 @@ public class User {
     @NotNull
     @PastOrPresent
     private LocalDate birthday;
+    // Номер версии строки в базе, из него строится ETag
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long version;
 
 }
\ No newline at end of file
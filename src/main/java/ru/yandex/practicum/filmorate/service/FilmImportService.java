@@ -0,0 +1,144 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.cache.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportError;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Пакетная загрузка фильмов. Тело запроса читается потоково по одному элементу массива,
+ * корректные фильмы сохраняются пачками по {@link #CHUNK_SIZE}, ошибки собираются по индексам элементов.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FilmImportService {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private final FilmStorage filmStorage;
+    private final ReferenceDataCache referenceDataCache;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    public FilmImportResult importFilms(InputStream body) throws IOException {
+        FilmImportResult result = new FilmImportResult();
+        List<Film> chunk = new ArrayList<>(CHUNK_SIZE);
+        List<Integer> chunkIndexes = new ArrayList<>(CHUNK_SIZE);
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new ValidationException("Ожидается JSON-массив фильмов.");
+            }
+            int index = 0;
+            try {
+                for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                    if (token == null) {
+                        result.addError(index, "Массив фильмов не завершён.");
+                        break;
+                    }
+                    JsonNode node = objectMapper.readTree(parser);
+                    result.setReceived(++index);
+                    Optional<Film> film = readFilm(node, index - 1, result);
+                    if (film.isPresent()) {
+                        chunk.add(film.get());
+                        chunkIndexes.add(index - 1);
+                    }
+                    if (chunk.size() == CHUNK_SIZE) {
+                        saveChunk(chunk, chunkIndexes, result);
+                    }
+                }
+            } catch (JsonProcessingException e) {
+                result.addError(index, "Некорректный JSON: " + e.getOriginalMessage());
+            }
+        }
+        saveChunk(chunk, chunkIndexes, result);
+        result.getErrors().sort(Comparator.comparingInt(FilmImportError::getIndex));
+        log.debug("Загрузка фильмов: получено {}, сохранено {}, ошибок {}",
+                result.getReceived(), result.getImported(), result.getErrors().size());
+        return result;
+    }
+
+    private Optional<Film> readFilm(JsonNode node, int index, FilmImportResult result) {
+        Film film;
+        try {
+            film = objectMapper.treeToValue(node, Film.class);
+        } catch (JsonProcessingException e) {
+            result.addError(index, "Некорректный фильм: " + e.getOriginalMessage());
+            return Optional.empty();
+        }
+        String error = validate(film);
+        if (error != null) {
+            result.addError(index, error);
+            return Optional.empty();
+        }
+        return Optional.of(film);
+    }
+
+    private String validate(Film film) {
+        List<String> violations = validator.validate(film).stream()
+                .map(this::formatViolation)
+                .sorted()
+                .collect(Collectors.toList());
+        if (!violations.isEmpty()) {
+            return String.join("; ", violations);
+        }
+        if (referenceDataCache.getMpa(film.getMpa().getId()).isEmpty()) {
+            return "Рейтинг с id = " + film.getMpa().getId() + " не найден.";
+        }
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                if (referenceDataCache.getGenre(genre.getId()).isEmpty()) {
+                    return "Жанр по id = " + genre.getId() + " не найден.";
+                }
+            }
+        }
+        return null;
+    }
+
+    private String formatViolation(ConstraintViolation<Film> violation) {
+        return violation.getPropertyPath() + ": " + violation.getMessage();
+    }
+
+    private void saveChunk(List<Film> chunk, List<Integer> chunkIndexes, FilmImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            filmStorage.createFilms(chunk);
+            result.setImported(result.getImported() + chunk.size());
+        } catch (RuntimeException e) {
+            // Текст исключения содержит SQL и имена ограничений, поэтому клиенту уходит только общее описание
+            log.error("Не удалось сохранить пачку из {} фильмов", chunk.size(), e);
+            String error = e instanceof DataIntegrityViolationException
+                    ? "Фильм не прошёл проверки хранилища, например, по длине полей."
+                    : "Не удалось сохранить фильм из-за внутренней ошибки.";
+            for (int index : chunkIndexes) {
+                result.addError(index, error);
+            }
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+    }
+}
@@ -2,68 +2,88 @@ package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dao.FilmStorage;
-import ru.yandex.practicum.filmorate.dao.UserStorage;
-import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class FilmService {
 
     private final FilmStorage filmStorage;
-    private final UserStorage userStorage;
+    private final PopularFilmsCache popularFilmsCache;
 
-    public FilmService(FilmStorage filmStorage, UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage, PopularFilmsCache popularFilmsCache) {
         this.filmStorage = filmStorage;
-        this.userStorage = userStorage;
+        this.popularFilmsCache = popularFilmsCache;
     }
 
     public List<Film> getFilms() {
         return filmStorage.getFilms();
     }
 
+    public CursorPage<Film> getFilmsPage(int after, int limit) {
+        return filmStorage.getFilmsPage(after, limit);
+    }
+
+    public CursorPage<Film> findFilms(FilmFilter filter, int after, int limit) {
+        return filmStorage.findFilms(filter, after, limit);
+    }
+
+    public void streamFilms(Consumer<Film> consumer) {
+        filmStorage.streamFilms(consumer);
+    }
+
     public Film getFilmById(int id) {
         return filmStorage.getFilmById(id);
     }
 
+    public long getFilmVersion(int id) {
+        return filmStorage.getFilmVersion(id);
+    }
+
+    public long getFilmsVersion() {
+        return filmStorage.getFilmsVersion();
+    }
+
     public Film createFilm(Film film) {
         return filmStorage.createFilm(film);
     }
 
     public Film updateFilm(Film film) {
-        int id = film.getId();
-        checkFilmId(id);
-        return filmStorage.updateFilm(film);
+        Film updated = filmStorage.updateFilm(film);
+        popularFilmsCache.invalidate();
+        return updated;
     }
 
     public Film likeFilm(int id, int userId) {
-        checkFilmId(id);
-        checkUserId(userId);
-        filmStorage.addLikeToFilm(id, userId);
-        return getFilmById(id);
+        return filmStorage.likeFilm(id, userId);
     }
 
     public Film unlikeFilm(int id, int userId) {
-        checkFilmId(id);
-        checkUserId(userId);
-        filmStorage.deleteLike(id, userId);
-        return getFilmById(id);
+        return filmStorage.unlikeFilm(id, userId);
+    }
+
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId) {
+        return filmStorage.getPopularFilms(count, genreId, mpaId);
     }
 
-    public List<Film> getPopularFilms(int count) {
-        return filmStorage.getPopularFilms(count);
+    public List<Film> getTrendingFilms(TrendingWindow window, int count) {
+        return filmStorage.getTrendingFilms(window, count);
     }
 
-    private void checkFilmId(int id) {
-        if (!filmStorage.isFilmPresent(id)) {
-            throw new NotFoundException("Фильм " + id + " не найден.");
-        }
+    public List<Film> searchFilms(String query, int limit) {
+        return filmStorage.searchFilms(query, limit);
     }
 
-    private void checkUserId(Integer userId) {
-        if (!userStorage.isUserPresent(userId)) {
-            throw new NotFoundException("Пользователь " + userId + " не найден.");
-        }
+    /**
+     * Сериализованный список популярных фильмов. Лайки сбрасывают кэш через рейтинг популярности,
+     * в том числе при отложенной записи, изменение фильма сбрасывает его в {@link #updateFilm(Film)}.
+     */
+    public byte[] getPopularFilmsJson(int count) {
+        return popularFilmsCache.get(count, filmStorage::getPopularFilms);
     }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Готовые JSON-ответы /films/popular по значению count.
+ * Ответ устаревает, когда меняется рейтинг популярности (лайки, новые фильмы) или вызывается {@link #invalidate()}
+ * после изменения фильма. Если задано окно устаревания, ответ отдаётся из кэша ещё столько миллисекунд
+ * после изменения, поэтому при потоке лайков он пересчитывается не чаще одного раза за окно.
+ */
+@Slf4j
+@Component
+public class PopularFilmsCache {
+
+    // Ограничение на число разных count в кэше, остальные значения считаются без кэширования
+    private static final int MAX_ENTRIES = 64;
+
+    private final FilmPopularityIndex popularityIndex;
+    private final ObjectMapper objectMapper;
+    private final long maxStalenessNanos;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    public PopularFilmsCache(FilmPopularityIndex popularityIndex,
+                             ObjectMapper objectMapper,
+                             @Value("${filmorate.films.popular-cache.max-staleness-ms:0}") long maxStalenessMs) {
+        this.popularityIndex = popularityIndex;
+        this.objectMapper = objectMapper;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMs);
+    }
+
+    /**
+     * Возвращает сериализованный список count популярных фильмов, при необходимости загружая его через loader.
+     * Параллельные промахи по одному count пересчитывают ответ один раз.
+     */
+    public byte[] get(int count, IntFunction<List<Film>> loader) {
+        Entry entry = entries.get(count);
+        if (entry != null && isFresh(entry)) {
+            return entry.json;
+        }
+        if (entry == null && entries.size() >= MAX_ENTRIES) {
+            return serialize(loader.apply(count));
+        }
+        return entries.compute(count, (key, current) ->
+                current != null && isFresh(current) ? current : load(key, loader)).json;
+    }
+
+    public void invalidate() {
+        invalidations.incrementAndGet();
+    }
+
+    private boolean isFresh(Entry entry) {
+        return entry.stamp == stamp() || System.nanoTime() - entry.loadedAt < maxStalenessNanos;
+    }
+
+    private Entry load(int count, IntFunction<List<Film>> loader) {
+        // Отметка берётся до загрузки: изменение во время загрузки приведёт к пересчёту при следующем запросе
+        long stamp = stamp();
+        byte[] json = serialize(loader.apply(count));
+        log.trace("Список популярных фильмов пересчитан: count {}, {} байт", count, json.length);
+        return new Entry(stamp, System.nanoTime(), json);
+    }
+
+    private long stamp() {
+        // Оба счётчика только растут, поэтому сумма меняется при изменении любого из них
+        return popularityIndex.getRevision() + invalidations.get();
+    }
+
+    private byte[] serialize(List<Film> films) {
+        try {
+            return objectMapper.writeValueAsBytes(films);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+        private final long stamp;
+        private final long loadedAt;
+        private final byte[] json;
+    }
+}
@@ -2,42 +2,50 @@ package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
 import ru.yandex.practicum.filmorate.dao.UserStorage;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class UserService {
 
     private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
 
     @Autowired
-    public UserService(UserStorage userStorage) {
+    public UserService(UserStorage userStorage, FilmStorage filmStorage) {
         this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
     }
 
     public void addFriend(int id, int friendId) {
-        if (!isUserExists(id) && !isUserExists(friendId)) {
-            throw new NotFoundException("Пользователь не существует.");
-        }
         userStorage.checkAndUpdateFriends(id, friendId);
     }
 
     public void deleteFriend(int id, int friendId) {
-        User u = getUserById(id);
-        User friend = getUserById(friendId);
-        List<User> friends = getFriends(id);
-        if (friends.contains(friend)) {
-            userStorage.deleteFriend(id, friendId);
-        }
+        userStorage.deleteFriend(id, friendId);
     }
 
     public List<User> getCommonFriends(int id1, int id2) {
        return userStorage.getCommonFriends(id1, id2);
     }
 
+    public List<User> getFriendSuggestions(int id, int limit) {
+        getUserById(id);
+        return userStorage.getFriendSuggestions(id, limit);
+    }
+
+    public List<Film> getRecommendations(int id, int count) {
+        getUserById(id);
+        return filmStorage.getRecommendations(id, count);
+    }
+
     public User createUser(User user) {
         checkIfUserNamePresent(user);
         return userStorage.createUser(user);
@@ -47,12 +55,27 @@ public class UserService {
         return userStorage.getUsers();
     }
 
+    public CursorPage<User> getUsersPage(int after, int limit) {
+        return userStorage.getUsersPage(after, limit);
+    }
+
+    public void streamUsers(Consumer<User> consumer) {
+        userStorage.streamUsers(consumer);
+    }
+
     public User updateUser(User user) {
-        getUserById(user.getId());
         checkIfUserNamePresent(user);
         return userStorage.updateUser(user);
     }
 
+    public long getUserVersion(int id) {
+        return userStorage.getUserVersion(id);
+    }
+
+    public long getUsersVersion() {
+        return userStorage.getUsersVersion();
+    }
+
     public User getUserById(Integer id) {
         return userStorage.getUserById(id)
                 .orElseThrow(() -> new NotFoundException("Пользователь не найден."));
@@ -62,10 +85,6 @@ public class UserService {
         return userStorage.getFriends(id);
     }
 
-    private Boolean isUserExists(Integer id) {
-        return userStorage.getUserById(id).isPresent();
-    }
-
     private void checkIfUserNamePresent(User user) {
         if (user.getName() == null || user.getName().isBlank()) {
             user.setName(user.getLogin());
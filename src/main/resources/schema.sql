@@ -1,4 +1,5 @@
 DROP TABLE IF EXISTS LIKES, RATINGS, FRIENDS, FILM_GENRE, USERS, GENRES, FILMS;
+DROP SEQUENCE IF EXISTS PUBLIC.FILM_ID_SEQ;
 
 CREATE TABLE IF NOT EXISTS PUBLIC.FILMS (
 	FILM_ID INTEGER NOT NULL PRIMARY KEY,
@@ -6,9 +7,12 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FILMS (
 	DESCRIPTION varchar(200),
 	RELEASE_DATE DATE NOT NULL,
 	DURATION INTEGER NOT NULL,
-	RATING_ID INTEGER NOT NULL
+	RATING_ID INTEGER NOT NULL,
+	VERSION BIGINT DEFAULT 0 NOT NULL
 );
 
+CREATE SEQUENCE IF NOT EXISTS PUBLIC.FILM_ID_SEQ START WITH 1 INCREMENT BY 50;
+
 CREATE TABLE IF NOT EXISTS PUBLIC.GENRES (
 	GENRE_ID INTEGER NOT NULL PRIMARY KEY,
 	GENRE_TITLE varchar(50) NOT NULL
@@ -26,6 +30,7 @@ CREATE TABLE IF NOT EXISTS PUBLIC.USERS (
 	LOGIN varchar(50) NOT NULL,
 	NAME varchar(200) NOT NULL,
 	BIRTHDAY DATE NOT NULL,
+	VERSION BIGINT DEFAULT 0 NOT NULL,
 	PRIMARY KEY (USER_ID)
 );
 
@@ -48,5 +53,8 @@ CREATE TABLE IF NOT EXISTS PUBLIC.RATINGS (
 CREATE TABLE IF NOT EXISTS PUBLIC.LIKES (
 	FILM_ID INTEGER NOT NULL REFERENCES PUBLIC.FILMS(FILM_ID),
 	USER_ID INTEGER NOT NULL REFERENCES PUBLIC.USERS(USER_ID),
+	CREATED_AT TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
 	PRIMARY KEY (FILM_ID, USER_ID)
-);
\ No newline at end of file
+);
+
+CREATE INDEX IF NOT EXISTS LIKES_CREATED_AT_IDX ON PUBLIC.LIKES (CREATED_AT);
\ No newline at end of file
@@ -1,37 +1,106 @@
 package ru.yandex.practicum.filmorate;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dao.cache.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.dao.index.CategoryPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmFilterIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.dao.index.FriendshipGraph;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.dao.index.TrendingFilmsIndex;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.metrics.StorageMetrics;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.dao.impl.FilmDbStorage;
 import ru.yandex.practicum.filmorate.dao.impl.GenreStorageDb;
+import ru.yandex.practicum.filmorate.dao.impl.LikeWriteBuffer;
+import ru.yandex.practicum.filmorate.dao.impl.ListVersions;
 import ru.yandex.practicum.filmorate.dao.impl.MpaStorageDb;
 import ru.yandex.practicum.filmorate.dao.impl.UserDbStorage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.StorageOperationStats;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
+import ru.yandex.practicum.filmorate.service.PopularFilmsCache;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
 @AllArgsConstructor(onConstructor = @__(@Autowired))
-@Transactional
 class FilmorateApplicationTests {
 
     private UserDbStorage userStorage;
     private FilmDbStorage filmStorage;
     private MpaStorageDb mpaStorageDb;
     private GenreStorageDb genreStorageDb;
+    private FilmPopularityIndex popularityIndex;
+    private ReferenceDataCache referenceDataCache;
+    private JdbcTemplate jdbcTemplate;
+    private FilmImportService filmImportService;
+    private FriendshipGraph friendshipGraph;
+    private LikeMatrix likeMatrix;
+    private StorageMetrics storageMetrics;
+    private ObjectMapper objectMapper;
+    private FilmSearchIndex filmSearchIndex;
+    private FilmFilterIndex filmFilterIndex;
+    private TrendingFilmsIndex trendingIndex;
+    private CategoryPopularityIndex categoryPopularityIndex;
+    private PlatformTransactionManager transactionManager;
+    private ListVersions listVersions;
+
+    @BeforeEach
+    public void setUp() {
+        likeMatrix.reload();
+        popularityIndex.reload();
+        referenceDataCache.refresh();
+        friendshipGraph.reload();
+        filmSearchIndex.reload();
+        filmFilterIndex.reload();
+        trendingIndex.reload();
+        categoryPopularityIndex.reload();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM PUBLIC.LIKES;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FRIENDS;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILM_GENRE;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILMS;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.USERS;");
+    }
 
     @Test
     public void testGetUsers() {
@@ -39,6 +108,21 @@ class FilmorateApplicationTests {
         assertEquals(users.size(), 0);
     }
 
+    @Test
+    public void testGetUsersPage() {
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        User user3 = userStorage.createUser(getUser().get(2));
+
+        CursorPage<User> firstPage = userStorage.getUsersPage(0, 2);
+        assertEquals(List.of(user1, user2), firstPage.getItems());
+        assertEquals(user2.getId(), firstPage.getNextCursor());
+
+        CursorPage<User> lastPage = userStorage.getUsersPage(firstPage.getNextCursor(), 2);
+        assertEquals(List.of(user3), lastPage.getItems());
+        assertNull(lastPage.getNextCursor());
+    }
+
     @Test
     public void testCreateUser() {
         User userToPut = getUser().get(0);
@@ -109,10 +193,92 @@ class FilmorateApplicationTests {
         assertEquals(friends2.get(1), userStorage.getUserById(user3.getId()).get());
     }
 
+    @Test
+    public void testGetCommonFriends() {
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        User user3 = userStorage.createUser(getUser().get(2));
+        userStorage.checkAndUpdateFriends(user1.getId(), user3.getId());
+        userStorage.checkAndUpdateFriends(user2.getId(), user3.getId());
+        userStorage.checkAndUpdateFriends(user1.getId(), user2.getId());
+        assertEquals(List.of(user3), userStorage.getCommonFriends(user1.getId(), user2.getId()));
+        assertTrue(userStorage.getCommonFriends(user2.getId(), user3.getId()).isEmpty());
+
+        userStorage.checkAndUpdateFriends(user3.getId(), user2.getId());
+        assertEquals(List.of(user2), userStorage.getCommonFriends(user1.getId(), user3.getId()));
+    }
+
+    @Test
+    public void testFriendshipGraphMatchesDatabaseAfterReload() {
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        User user3 = userStorage.createUser(getUser().get(2));
+        userStorage.checkAndUpdateFriends(user1.getId(), user2.getId());
+        userStorage.checkAndUpdateFriends(user1.getId(), user3.getId());
+        userStorage.checkAndUpdateFriends(user2.getId(), user1.getId());
+        userStorage.checkAndUpdateFriends(user3.getId(), user1.getId());
+        userStorage.deleteFriend(user1.getId(), user3.getId());
+        userStorage.deleteFriend(user2.getId(), user1.getId());
+        List<User> friends1 = userStorage.getFriends(user1.getId());
+        List<User> friends2 = userStorage.getFriends(user2.getId());
+        List<User> friends3 = userStorage.getFriends(user3.getId());
+
+        friendshipGraph.reload();
+
+        assertEquals(List.of(user2), friends1);
+        assertEquals(List.of(), friends2);
+        assertEquals(List.of(user1), friends3);
+        assertEquals(friends1, userStorage.getFriends(user1.getId()));
+        assertEquals(friends2, userStorage.getFriends(user2.getId()));
+        assertEquals(friends3, userStorage.getFriends(user3.getId()));
+    }
+
+    @Test
+    public void testGetFriendSuggestions() {
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        User user3 = userStorage.createUser(getUser().get(2));
+        User user4 = userStorage.createUser(getExtraUser("four"));
+        User user5 = userStorage.createUser(getExtraUser("five"));
+        makeFriends(user1, user2);
+        makeFriends(user1, user3);
+        makeFriends(user1, user4);
+        makeFriends(user5, user2);
+        makeFriends(user5, user3);
+
+        assertEquals(List.of(user5), userStorage.getFriendSuggestions(user1.getId(), 10));
+        assertEquals(List.of(user3, user4), userStorage.getFriendSuggestions(user2.getId(), 10));
+        assertEquals(List.of(user3), userStorage.getFriendSuggestions(user2.getId(), 1));
+        assertEquals(List.of(user1), userStorage.getFriendSuggestions(user5.getId(), 10));
+
+        userStorage.checkAndUpdateFriends(user4.getId(), user5.getId());
+        assertEquals(List.of(user2, user3), userStorage.getFriendSuggestions(user4.getId(), 10));
+        assertEquals(List.of(user1), userStorage.getFriendSuggestions(user5.getId(), 10));
+    }
+
+    @Test
+    public void testFriendMutationsReportChanges() {
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+
+        assertTrue(userStorage.checkAndUpdateFriends(user1.getId(), user2.getId()));
+        assertFalse(userStorage.checkAndUpdateFriends(user1.getId(), user2.getId()));
+        assertTrue(userStorage.checkAndUpdateFriends(user2.getId(), user1.getId()));
+        assertFalse(userStorage.checkAndUpdateFriends(user2.getId(), user1.getId()));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM PUBLIC.FRIENDS;", Integer.class));
+
+        assertTrue(userStorage.deleteFriend(user2.getId(), user1.getId()));
+        assertFalse(userStorage.deleteFriend(user2.getId(), user1.getId()));
+        assertEquals(List.of(user2), userStorage.getFriends(user1.getId()));
+        assertTrue(userStorage.getFriends(user2.getId()).isEmpty());
+        assertThrows(NotFoundException.class, () -> userStorage.checkAndUpdateFriends(user1.getId(), -1));
+        assertThrows(NotFoundException.class, () -> userStorage.deleteFriend(-1, user1.getId()));
+    }
+
     @Test
     public void testIsUserPresentShouldReturnTrue() {
-        userStorage.createUser(getUser().get(0));
-        boolean bool = userStorage.isUserPresent(1);
+        User user = userStorage.createUser(getUser().get(0));
+        boolean bool = userStorage.isUserPresent(user.getId());
         assertTrue(bool);
     }
 
@@ -151,10 +317,10 @@ class FilmorateApplicationTests {
         assertEquals(friends1.get(0), userStorage.getUserById(user2.getId()).get());
         assertTrue(friends2.isEmpty());
 
-        userStorage.deleteFriend(8, 9);
+        userStorage.deleteFriend(user1.getId(), user2.getId());
 
-        friends1 = userStorage.getFriends(8);
-        friends2 = userStorage.getFriends(9);
+        friends1 = userStorage.getFriends(user1.getId());
+        friends2 = userStorage.getFriends(user2.getId());
         assertTrue(friends1.isEmpty());
         assertTrue(friends2.isEmpty());
     }
@@ -184,29 +350,303 @@ class FilmorateApplicationTests {
         assertEquals(films.size(), 0);
     }
 
+    @Test
+    public void testGetFilmsPage() {
+        Film film1 = filmStorage.createFilm(getFilms().get(0));
+        Film film2 = filmStorage.createFilm(getFilms().get(1));
+        Film film3 = filmStorage.createFilm(getFilms().get(2));
+
+        CursorPage<Film> firstPage = filmStorage.getFilmsPage(0, 2);
+        assertEquals(2, firstPage.getItems().size());
+        assertEquals(film1.getId(), firstPage.getItems().get(0).getId());
+        assertEquals(film2.getId(), firstPage.getItems().get(1).getId());
+        assertNotNull(firstPage.getItems().get(0).getGenres());
+        assertEquals(film2.getId(), firstPage.getNextCursor());
+
+        CursorPage<Film> lastPage = filmStorage.getFilmsPage(firstPage.getNextCursor(), 2);
+        assertEquals(1, lastPage.getItems().size());
+        assertEquals(film3.getId(), lastPage.getItems().get(0).getId());
+        assertNull(lastPage.getNextCursor());
+    }
+
+    @Test
+    public void testStreamFilms() {
+        Film film1 = getFilms().get(0);
+        film1.setGenres(new LinkedHashSet<>(List.of(new Genre(1, null), new Genre(2, null))));
+        filmStorage.createFilm(film1);
+        filmStorage.createFilm(getFilms().get(1));
+        Film film3 = getFilms().get(2);
+        film3.setGenres(new LinkedHashSet<>(List.of(new Genre(6, null))));
+        filmStorage.createFilm(film3);
+
+        List<Film> streamed = new ArrayList<>();
+        filmStorage.streamFilms(streamed::add);
+        assertEquals(filmStorage.getFilms(), streamed);
+    }
+
     @Test
     public void testCreateFilm() {
-        Film film = getFilms().get(0);
-        filmStorage.createFilm(film);
-        Film filmFromDb = filmStorage.getFilmById(1);
-        assertEquals(filmFromDb.getId(), 1);
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        Film filmFromDb = filmStorage.getFilmById(film.getId());
+        assertEquals(filmFromDb.getId(), film.getId());
+    }
+
+    @Test
+    public void testImportFilms() throws IOException {
+        String json = "[" +
+                "{\"name\":\"First\",\"description\":\"d\",\"releaseDate\":\"2000-01-01\",\"duration\":90," +
+                "\"mpa\":{\"id\":1},\"genres\":[{\"id\":1},{\"id\":2},{\"id\":1}]}," +
+                "{\"name\":\" \",\"description\":\"d\",\"releaseDate\":\"2000-01-01\",\"duration\":90," +
+                "\"mpa\":{\"id\":1}}," +
+                "{\"name\":\"Third\",\"description\":\"d\",\"releaseDate\":\"2000-01-01\",\"duration\":90," +
+                "\"mpa\":{\"id\":42}}," +
+                "{\"name\":\"Fourth\",\"description\":\"d\",\"releaseDate\":\"not a date\",\"duration\":90," +
+                "\"mpa\":{\"id\":1}}," +
+                "{\"name\":\"Fifth\",\"description\":\"d\",\"releaseDate\":\"2001-01-01\",\"duration\":60," +
+                "\"mpa\":{\"id\":2}}" +
+                "]";
+        FilmImportResult result = filmImportService.importFilms(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(5, result.getReceived());
+        assertEquals(2, result.getImported());
+        assertEquals(List.of(1, 2, 3), result.getErrors().stream().map(e -> e.getIndex()).collect(toList()));
+        List<Film> films = filmStorage.getFilms();
+        assertEquals(2, films.size());
+        assertEquals("First", films.get(0).getName());
+        assertEquals(2, films.get(0).getGenres().size());
+        assertEquals("PG", films.get(1).getMpa().getName());
+    }
+
+    @Test
+    public void testImportHidesStorageErrors() throws IOException {
+        String json = "[{\"name\":\"" + "x".repeat(201) + "\",\"description\":\"d\"," +
+                "\"releaseDate\":\"2000-01-01\",\"duration\":90,\"mpa\":{\"id\":1}}]";
+        FilmImportResult result = filmImportService.importFilms(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(0, result.getImported());
+        assertEquals("Фильм не прошёл проверки хранилища, например, по длине полей.",
+                result.getErrors().get(0).getError());
     }
 
     @Test
     public void testUpdateFilm() {
-        filmStorage.createFilm(getFilms().get(0));
-        Film filmToUpdate = filmStorage.getFilmById(1);
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        Film filmToUpdate = filmStorage.getFilmById(film.getId());
         filmToUpdate.setName("New name for first film");
         filmStorage.updateFilm(filmToUpdate);
-        Film filmFromDb = filmStorage.getFilmById(1);
+        Film filmFromDb = filmStorage.getFilmById(film.getId());
         assertEquals(filmFromDb.getName(), "New name for first film");
     }
 
+    @Test
+    public void testUpdateFilmAppliesGenreDiff() {
+        Film film = getFilms().get(0);
+        film.setGenres(new LinkedHashSet<>(List.of(new Genre(2, null), new Genre(1, null))));
+        Film created = filmStorage.createFilm(film);
+        assertEquals(List.of(1, 2), getGenreIds(created));
+        assertEquals(created, filmStorage.getFilmById(created.getId()));
+
+        Film update = getFilms().get(1);
+        update.setId(created.getId());
+        update.setGenres(new LinkedHashSet<>(List.of(new Genre(3, null), new Genre(2, null))));
+        Film updated = filmStorage.updateFilm(update);
+        assertEquals(List.of(2, 3), getGenreIds(updated));
+        assertEquals(updated, filmStorage.getFilmById(created.getId()));
+
+        Film withoutGenres = getFilms().get(2);
+        withoutGenres.setId(created.getId());
+        withoutGenres.setGenres(null);
+        assertEquals(List.of(2, 3), getGenreIds(filmStorage.updateFilm(withoutGenres)));
+        assertEquals(List.of(2, 3), getGenreIds(filmStorage.getFilmById(created.getId())));
+
+        Film missing = getFilms().get(0);
+        missing.setId(-1);
+        assertThrows(NotFoundException.class, () -> filmStorage.updateFilm(missing));
+        Film unknownGenre = getFilms().get(0);
+        unknownGenre.setGenres(new LinkedHashSet<>(List.of(new Genre(42, null))));
+        assertThrows(NotFoundException.class, () -> filmStorage.createFilm(unknownGenre));
+    }
+
+    @Test
+    public void testFilmsShareReferenceData() throws Exception {
+        Film first = getFilms().get(0);
+        first.setGenres(new LinkedHashSet<>(List.of(new Genre(3, null), new Genre(1, null), new Genre(3, null))));
+        Film second = getFilms().get(1);
+        second.setMpa(new Mpa(first.getMpa().getId(), null));
+        second.setGenres(new LinkedHashSet<>(List.of(new Genre(1, null), new Genre(3, null))));
+        first = filmStorage.createFilm(first);
+        second = filmStorage.createFilm(second);
+
+        Film firstFromDb = filmStorage.getFilmById(first.getId());
+        Film secondFromDb = filmStorage.getFilmById(second.getId());
+        assertSame(firstFromDb.getGenres(), secondFromDb.getGenres());
+        assertSame(firstFromDb.getMpa(), secondFromDb.getMpa());
+        assertSame(first.getGenres(), firstFromDb.getGenres());
+        assertThrows(UnsupportedOperationException.class, () -> firstFromDb.getGenres().add(new Genre(2, null)));
+
+        String json = objectMapper.writeValueAsString(firstFromDb);
+        assertTrue(json.contains("\"mpa\":{\"id\":1,\"name\":\"G\"}"));
+        assertTrue(json.contains("\"genres\":[{\"id\":1,\"name\":\"Комедия\"},{\"id\":3,\"name\":\"Мультфильм\"}]"));
+        assertEquals(firstFromDb, objectMapper.readValue(json, Film.class));
+    }
+
+    @Test
+    public void testVersionsGrowOnEveryChange() {
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        User user = userStorage.createUser(getExtraUser("versioned"));
+        long filmsVersion = filmStorage.getFilmsVersion();
+        long usersVersion = userStorage.getUsersVersion();
+        assertEquals(0, filmStorage.getFilmVersion(film.getId()));
+        assertEquals(0, userStorage.getUserVersion(user.getId()));
+
+        film.setGenres(new LinkedHashSet<>(List.of(new Genre(1, null))));
+        filmStorage.updateFilm(film);
+        assertEquals(1, filmStorage.getFilmVersion(film.getId()));
+        assertTrue(filmStorage.addLikeToFilm(film.getId(), user.getId()));
+        assertEquals(2, filmStorage.getFilmVersion(film.getId()));
+        assertFalse(filmStorage.addLikeToFilm(film.getId(), user.getId()));
+        assertEquals(2, filmStorage.getFilmVersion(film.getId()));
+        assertTrue(filmStorage.deleteLike(film.getId(), user.getId()));
+        assertEquals(3, filmStorage.getFilmById(film.getId()).getVersion());
+        assertEquals(filmsVersion + 3, filmStorage.getFilmsVersion());
+
+        user.setName("Новое имя");
+        userStorage.updateUser(user);
+        assertEquals(1, userStorage.getUserById(user.getId()).orElseThrow().getVersion());
+        assertEquals(usersVersion + 1, userStorage.getUsersVersion());
+        userStorage.createUser(getExtraUser("another"));
+        assertEquals(usersVersion + 2, userStorage.getUsersVersion());
+
+        User missing = getExtraUser("missing");
+        missing.setId(-1);
+        assertThrows(NotFoundException.class, () -> userStorage.updateUser(missing));
+        assertThrows(NotFoundException.class, () -> filmStorage.getFilmVersion(-1));
+        assertThrows(NotFoundException.class, () -> userStorage.getUserVersion(-1));
+    }
+
+    @Test
+    public void testPopularFilmsCacheInvalidation() throws IOException {
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        User user = userStorage.createUser(getUser().get(0));
+        AtomicInteger loads = new AtomicInteger();
+        IntFunction<List<Film>> loader = count -> {
+            loads.incrementAndGet();
+            return filmStorage.getPopularFilms(count);
+        };
+        PopularFilmsCache cache = new PopularFilmsCache(popularityIndex, objectMapper, 0);
+        byte[] json = cache.get(10, loader);
+        assertSame(json, cache.get(10, loader));
+        assertEquals(1, loads.get());
+        assertEquals(List.of(film.getId()), getIds(List.of(objectMapper.readValue(json, Film[].class))));
+
+        filmStorage.addLikeToFilm(film.getId(), user.getId());
+        cache.get(10, loader);
+        assertEquals(2, loads.get());
+        cache.invalidate();
+        cache.get(10, loader);
+        cache.get(5, loader);
+        assertEquals(4, loads.get());
+
+        PopularFilmsCache staleCache = new PopularFilmsCache(popularityIndex, objectMapper, 60_000);
+        byte[] stale = staleCache.get(10, loader);
+        filmStorage.deleteLike(film.getId(), user.getId());
+        staleCache.invalidate();
+        assertSame(stale, staleCache.get(10, loader));
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    public void testSearchFilms() {
+        Film matrix = getFilms().get(0);
+        matrix.setName("Матрица");
+        matrix.setDescription("Хакер узнаёт правду о мире");
+        matrix = filmStorage.createFilm(matrix);
+        Film hacker = getFilms().get(1);
+        hacker.setName("Хакеры");
+        hacker.setDescription("Подростки взламывают систему");
+        hacker = filmStorage.createFilm(hacker);
+        Film english = filmStorage.createFilm(getFilms().get(2));
+        User user = userStorage.createUser(getUser().get(0));
+
+        assertEquals(List.of(hacker.getId(), matrix.getId()), getIds(filmStorage.searchFilms("хакер", 10)));
+        assertEquals(List.of(matrix.getId()), getIds(filmStorage.searchFilms("ХАКЕР узнаЁт", 10)));
+        assertEquals(List.of(english.getId()), getIds(filmStorage.searchFilms("third FILM", 10)));
+        assertEquals(List.of(), getIds(filmStorage.searchFilms("хакер third", 10)));
+        assertEquals(List.of(), getIds(filmStorage.searchFilms(" ,. ", 10)));
+
+        Film second = filmStorage.createFilm(getFilms().get(1));
+        assertEquals(List.of(english.getId(), second.getId()), getIds(filmStorage.searchFilms("film", 2)));
+        filmStorage.addLikeToFilm(second.getId(), user.getId());
+        assertEquals(List.of(second.getId(), english.getId()), getIds(filmStorage.searchFilms("film", 2)));
+
+        matrix.setName("Матрица: Перезагрузка");
+        matrix.setDescription("Продолжение");
+        filmStorage.updateFilm(matrix);
+        assertEquals(List.of(hacker.getId()), getIds(filmStorage.searchFilms("хакер", 10)));
+        assertEquals(List.of(matrix.getId()), getIds(filmStorage.searchFilms("перезагр", 10)));
+
+        // Слова прежнего описания, которых больше нет ни в одном фильме, удалены из словаря
+        int termCount = filmSearchIndex.getTermCount();
+        filmSearchIndex.reload();
+        assertEquals(filmSearchIndex.getTermCount(), termCount);
+        assertEquals(List.of(matrix.getId()), getIds(filmStorage.searchFilms("перезагр", 10)));
+    }
+
+    @Test
+    public void testFindFilmsByFilter() {
+        Film old = getFilms().get(0);
+        old.setGenres(new LinkedHashSet<>(List.of(new Genre(1, null), new Genre(2, null))));
+        old = filmStorage.createFilm(old);
+        Film middle = getFilms().get(1);
+        middle.setMpa(new Mpa(2, null));
+        middle.setGenres(new LinkedHashSet<>(List.of(new Genre(2, null))));
+        middle = filmStorage.createFilm(middle);
+        Film recent = getFilms().get(2);
+        recent.setGenres(new LinkedHashSet<>(List.of(new Genre(3, null))));
+        recent = filmStorage.createFilm(recent);
+        User user = userStorage.createUser(getUser().get(0));
+
+        assertEquals(List.of(old.getId(), middle.getId()),
+                getIds(findFilms(FilmFilter.builder().genreIds(Set.of(2)).build())));
+        assertEquals(List.of(old.getId(), recent.getId()),
+                getIds(findFilms(FilmFilter.builder().genreIds(Set.of(1, 3)).mpaIds(Set.of(1)).build())));
+        assertEquals(List.of(middle.getId(), recent.getId()),
+                getIds(findFilms(FilmFilter.builder().yearFrom(1990).build())));
+        assertEquals(List.of(middle.getId()),
+                getIds(findFilms(FilmFilter.builder().genreIds(Set.of(2)).yearFrom(1961).yearTo(2000).build())));
+        assertEquals(List.of(), getIds(findFilms(FilmFilter.builder().yearFrom(2000).yearTo(1990).build())));
+        assertEquals(List.of(), getIds(findFilms(FilmFilter.builder().genreIds(Set.of(6)).build())));
+
+        CursorPage<Film> page = filmStorage.findFilms(FilmFilter.builder().mpaIds(Set.of(1)).build(), 0, 1);
+        assertEquals(List.of(old.getId()), getIds(page.getItems()));
+        assertEquals(old.getId(), page.getNextCursor());
+        page = filmStorage.findFilms(FilmFilter.builder().mpaIds(Set.of(1)).build(), page.getNextCursor(), 1);
+        assertEquals(List.of(recent.getId()), getIds(page.getItems()));
+        assertNull(page.getNextCursor());
+
+        filmStorage.addLikeToFilm(recent.getId(), user.getId());
+        assertEquals(List.of(recent.getId(), old.getId()),
+                getIds(findFilms(FilmFilter.builder().mpaIds(Set.of(1)).sortByPopularity(true).build())));
+
+        recent.setGenres(new LinkedHashSet<>(List.of(new Genre(2, null))));
+        recent.setReleaseDate(LocalDate.of(1970, 1, 1));
+        filmStorage.updateFilm(recent);
+        assertEquals(List.of(old.getId(), middle.getId(), recent.getId()),
+                getIds(findFilms(FilmFilter.builder().genreIds(Set.of(2)).build())));
+        assertEquals(List.of(old.getId(), recent.getId()),
+                getIds(findFilms(FilmFilter.builder().yearTo(1989).build())));
+        filmFilterIndex.reload();
+        assertEquals(List.of(old.getId(), recent.getId()),
+                getIds(findFilms(FilmFilter.builder().yearTo(1989).build())));
+    }
+
     @Test
     public void testGetFilmById() {
-        filmStorage.createFilm(getFilms().get(0));
-        Film filmFromDb = filmStorage.getFilmById(1);
-        assertEquals(filmFromDb.getId(), 1);
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        Film filmFromDb = filmStorage.getFilmById(film.getId());
+        assertEquals(filmFromDb.getId(), film.getId());
         assertEquals(filmFromDb.getName(), "First film");
         assertEquals(filmFromDb.getDescription(), "Description of first film");
         assertEquals(filmFromDb.getReleaseDate(), LocalDate.of(1960, 12, 5));
@@ -214,8 +654,8 @@ class FilmorateApplicationTests {
 
     @Test
     public void testIsFilmPresentTrue() {
-        filmStorage.createFilm(getFilms().get(0));
-        assertTrue(filmStorage.isFilmPresent(1));
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        assertTrue(filmStorage.isFilmPresent(film.getId()));
     }
 
     @Test
@@ -223,6 +663,325 @@ class FilmorateApplicationTests {
         assertFalse(filmStorage.isFilmPresent(1));
     }
 
+    @Test
+    public void testGetPopularFilms() {
+        Film film1 = filmStorage.createFilm(getFilms().get(0));
+        Film film2 = filmStorage.createFilm(getFilms().get(1));
+        Film film3 = filmStorage.createFilm(getFilms().get(2));
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        filmStorage.addLikeToFilm(film3.getId(), user1.getId());
+        filmStorage.addLikeToFilm(film3.getId(), user2.getId());
+        filmStorage.addLikeToFilm(film2.getId(), user1.getId());
+        filmStorage.addLikeToFilm(film2.getId(), user1.getId());
+
+        List<Film> popular = filmStorage.getPopularFilms(10);
+        assertEquals(3, popular.size());
+        assertEquals(film3.getId(), popular.get(0).getId());
+        assertEquals(film2.getId(), popular.get(1).getId());
+        assertEquals(film1.getId(), popular.get(2).getId());
+        assertEquals(1, filmStorage.getPopularFilms(1).size());
+
+        filmStorage.deleteLike(film3.getId(), user1.getId());
+        filmStorage.deleteLike(film3.getId(), user2.getId());
+        popular = filmStorage.getPopularFilms(2);
+        assertEquals(film2.getId(), popular.get(0).getId());
+        assertEquals(film1.getId(), popular.get(1).getId());
+    }
+
+    @Test
+    public void testPopularityIndexMatchesDatabase() {
+        Film film1 = filmStorage.createFilm(getFilms().get(0));
+        Film film2 = filmStorage.createFilm(getFilms().get(1));
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        User user3 = userStorage.createUser(getUser().get(2));
+        filmStorage.addLikeToFilm(film1.getId(), user1.getId());
+        filmStorage.addLikeToFilm(film2.getId(), user1.getId());
+        filmStorage.addLikeToFilm(film2.getId(), user2.getId());
+        filmStorage.addLikeToFilm(film2.getId(), user3.getId());
+        filmStorage.deleteLike(film2.getId(), user2.getId());
+        filmStorage.deleteLike(film1.getId(), user3.getId());
+        assertTrue(popularityIndex.isConsistentWithDatabase());
+
+        popularityIndex.reload();
+        assertTrue(popularityIndex.isConsistentWithDatabase());
+    }
+
+    @Test
+    public void testLikeMutationsReportChanges() {
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        User user = userStorage.createUser(getUser().get(0));
+
+        assertTrue(filmStorage.addLikeToFilm(film.getId(), user.getId()));
+        assertFalse(filmStorage.addLikeToFilm(film.getId(), user.getId()));
+        assertEquals(1, popularityIndex.getLikes(film.getId()));
+        assertTrue(filmStorage.deleteLike(film.getId(), user.getId()));
+        assertFalse(filmStorage.deleteLike(film.getId(), user.getId()));
+        assertEquals(0, popularityIndex.getLikes(film.getId()));
+        assertThrows(NotFoundException.class, () -> filmStorage.addLikeToFilm(film.getId(), -1));
+        assertThrows(NotFoundException.class, () -> filmStorage.addLikeToFilm(-1, user.getId()));
+        assertThrows(NotFoundException.class, () -> filmStorage.deleteLike(-1, user.getId()));
+        assertTrue(popularityIndex.isConsistentWithDatabase());
+    }
+
+    @Test
+    public void testLikeResponsesMatchStoredFilm() {
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        User user = userStorage.createUser(getUser().get(0));
+
+        Film liked = filmStorage.likeFilm(film.getId(), user.getId());
+        assertEquals(filmStorage.getFilmById(film.getId()), liked);
+        assertEquals(1, liked.getLikes());
+        assertEquals(liked, filmStorage.likeFilm(film.getId(), user.getId()));
+
+        Film unliked = filmStorage.unlikeFilm(film.getId(), user.getId());
+        assertEquals(filmStorage.getFilmById(film.getId()), unliked);
+        assertEquals(0, unliked.getLikes());
+        assertEquals(unliked, filmStorage.unlikeFilm(film.getId(), user.getId()));
+        assertThrows(NotFoundException.class, () -> filmStorage.likeFilm(film.getId(), -1));
+        assertThrows(NotFoundException.class, () -> filmStorage.unlikeFilm(-1, user.getId()));
+    }
+
+    @Test
+    public void testLikeIndexServesCountsAndSetOperations() throws Exception {
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        Film other = filmStorage.createFilm(getFilms().get(1));
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        filmStorage.addLikeToFilm(film.getId(), user1.getId());
+        filmStorage.addLikeToFilm(film.getId(), user2.getId());
+        filmStorage.addLikeToFilm(other.getId(), user1.getId());
+
+        assertEquals(2, likeMatrix.getLikeCount(film.getId()));
+        assertTrue(likeMatrix.hasLiked(user2.getId(), film.getId()));
+        assertFalse(likeMatrix.hasLiked(user2.getId(), other.getId()));
+        assertEquals(1, likeMatrix.getCommonLikes(user1.getId(), user2.getId()));
+        assertEquals(2, filmStorage.getFilmById(film.getId()).getLikes());
+        assertEquals(List.of(2, 1), filmStorage.getPopularFilms(2).stream().map(Film::getLikes).collect(toList()));
+
+        filmStorage.deleteLike(film.getId(), user2.getId());
+        likeMatrix.reload();
+        assertEquals(1, likeMatrix.getLikeCount(film.getId()));
+        assertEquals(0, likeMatrix.getLikeCount(-1));
+        Film fromDb = filmStorage.getFilmById(film.getId());
+        String json = objectMapper.writeValueAsString(fromDb);
+        assertTrue(json.contains("\"likes\":1"));
+        assertEquals(0, objectMapper.readValue(json, Film.class).getLikes());
+    }
+
+    @Test
+    public void testTrendingFilmsByWindow() {
+        Film film1 = filmStorage.createFilm(getFilms().get(0));
+        Film film2 = filmStorage.createFilm(getFilms().get(1));
+        Film film3 = filmStorage.createFilm(getFilms().get(2));
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        User user3 = userStorage.createUser(getUser().get(2));
+        filmStorage.addLikeToFilm(film1.getId(), user1.getId());
+        filmStorage.addLikeToFilm(film2.getId(), user1.getId());
+        filmStorage.addLikeToFilm(film2.getId(), user2.getId());
+        assertEquals(List.of(film2.getId(), film1.getId()),
+                getIds(filmStorage.getTrendingFilms(TrendingWindow.HOUR, 10)));
+        filmStorage.deleteLike(film2.getId(), user1.getId());
+        filmStorage.deleteLike(film2.getId(), user2.getId());
+        assertEquals(List.of(film1.getId()), getIds(filmStorage.getTrendingFilms(TrendingWindow.HOUR, 10)));
+
+        // Лайки двухчасовой и восьмидневной давности видны только после перезагрузки из LIKES
+        jdbcTemplate.update("INSERT INTO PUBLIC.LIKES (FILM_ID, USER_ID, CREATED_AT) VALUES (?, ?, ?), (?, ?, ?);",
+                film3.getId(), user2.getId(), LocalDateTime.now().minusHours(2),
+                film3.getId(), user3.getId(), LocalDateTime.now().minusDays(8));
+        trendingIndex.reload();
+        assertEquals(List.of(film1.getId()), getIds(filmStorage.getTrendingFilms(TrendingWindow.HOUR, 10)));
+        assertEquals(List.of(film1.getId(), film3.getId()),
+                getIds(filmStorage.getTrendingFilms(TrendingWindow.DAY, 10)));
+        assertEquals(List.of(film1.getId()), getIds(filmStorage.getTrendingFilms(TrendingWindow.WEEK, 1)));
+        filmStorage.deleteLike(film3.getId(), user2.getId());
+        assertEquals(List.of(film1.getId()), getIds(filmStorage.getTrendingFilms(TrendingWindow.WEEK, 10)));
+    }
+
+    @Test
+    public void testGetRecommendations() {
+        List<Film> films = getFilms();
+        Film filmA = filmStorage.createFilm(films.get(0));
+        Film filmB = filmStorage.createFilm(films.get(1));
+        Film filmC = filmStorage.createFilm(films.get(2));
+        Film filmD = filmStorage.createFilm(getFilms().get(0));
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        User user3 = userStorage.createUser(getUser().get(2));
+        filmStorage.addLikeToFilm(filmA.getId(), user1.getId());
+        filmStorage.addLikeToFilm(filmB.getId(), user1.getId());
+        filmStorage.addLikeToFilm(filmA.getId(), user2.getId());
+        filmStorage.addLikeToFilm(filmB.getId(), user2.getId());
+        filmStorage.addLikeToFilm(filmC.getId(), user2.getId());
+        filmStorage.addLikeToFilm(filmA.getId(), user3.getId());
+        filmStorage.addLikeToFilm(filmD.getId(), user3.getId());
+
+        assertEquals(List.of(filmC.getId(), filmD.getId()), getIds(filmStorage.getRecommendations(user1.getId(), 10)));
+        assertEquals(List.of(filmC.getId()), getIds(filmStorage.getRecommendations(user1.getId(), 1)));
+
+        filmStorage.addLikeToFilm(filmC.getId(), user1.getId());
+        assertEquals(List.of(filmD.getId()), getIds(filmStorage.getRecommendations(user1.getId(), 10)));
+
+        likeMatrix.reload();
+        assertEquals(List.of(filmD.getId()), getIds(filmStorage.getRecommendations(user1.getId(), 10)));
+        assertTrue(filmStorage.getRecommendations(user3.getId() + 100, 10).isEmpty());
+    }
+
+    @Test
+    public void testStorageMetricsCountCallsAndStatements() {
+        storageMetrics.reset();
+        User user = userStorage.createUser(getUser().get(0));
+        userStorage.getUserById(user.getId());
+        userStorage.getUserById(user.getId());
+        assertThrows(NotFoundException.class, () -> filmStorage.getFilmById(-1));
+
+        StorageOperationStats getUser = getOperationStats("UserStorage.getUserById");
+        assertEquals(2, getUser.getCalls());
+        assertEquals(0, getUser.getErrors());
+        assertEquals(2, getUser.getStatements());
+        assertTrue(getUser.getP50Millis() <= getUser.getMaxMillis());
+        assertEquals(1, getOperationStats("UserStorage.createUser").getCalls());
+        assertEquals(1, getOperationStats("FilmStorage.getFilmById").getErrors());
+    }
+
+    @Test
+    public void testLikeWriteBufferCoalescesAndFlushes() {
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        LikeWriteBuffer buffer = new LikeWriteBuffer(jdbcTemplate, transactionManager, likeMatrix, listVersions,
+                List.of(popularityIndex, likeMatrix), true, 100, 100, 60_000);
+
+        assertTrue(buffer.like(film.getId(), user1.getId()));
+        assertFalse(buffer.like(film.getId(), user1.getId()));
+        assertTrue(buffer.like(film.getId(), user2.getId()));
+        assertTrue(buffer.unlike(film.getId(), user2.getId()));
+        assertFalse(buffer.unlike(film.getId(), user2.getId()));
+        assertEquals(2, buffer.getStats().getQueueDepth());
+        assertEquals(0, popularityIndex.getLikes(film.getId()));
+
+        buffer.flush();
+
+        assertEquals(0, buffer.getStats().getQueueDepth());
+        assertEquals(1, buffer.getStats().getFlushCount());
+        assertEquals(1, popularityIndex.getLikes(film.getId()));
+        assertEquals(List.of(user1.getId()), jdbcTemplate.queryForList(
+                "SELECT USER_ID FROM PUBLIC.LIKES WHERE FILM_ID = ?;", Integer.class, film.getId()));
+        assertTrue(popularityIndex.isConsistentWithDatabase());
+        // После сброса состояние пары берётся из матрицы лайков
+        assertFalse(buffer.like(film.getId(), user1.getId()));
+        assertTrue(buffer.unlike(film.getId(), user1.getId()));
+    }
+
+    @Test
+    public void testLikeWriteBufferRetriesFailedBatch() {
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        User user1 = userStorage.createUser(getUser().get(0));
+        User user2 = userStorage.createUser(getUser().get(1));
+        JdbcTemplate failingOnce = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            private int failures;
+
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                // Падает последний запрос пакета и обеих записей по одному, когда лайки уже вставлены
+                if (failures < 3 && sql.startsWith("UPDATE")) {
+                    failures++;
+                    throw new DataAccessResourceFailureException("Нет соединения с базой");
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        LikeWriteBuffer buffer = new LikeWriteBuffer(failingOnce, transactionManager, likeMatrix, listVersions,
+                List.of(popularityIndex, likeMatrix), true, 100, 100, 60_000);
+
+        buffer.like(film.getId(), user1.getId());
+        buffer.like(film.getId(), user2.getId());
+        assertFalse(buffer.flush());
+        assertEquals(2, buffer.getStats().getQueueDepth());
+        assertEquals(2, buffer.getStats().getFailedEvents());
+        assertEquals(0, popularityIndex.getLikes(film.getId()));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM PUBLIC.LIKES WHERE FILM_ID = ?;", Integer.class, film.getId()));
+        // Событие после неудачного сброса новее вернувшегося в буфер
+        assertTrue(buffer.unlike(film.getId(), user2.getId()));
+        assertEquals(2, buffer.getStats().getQueueDepth());
+
+        assertTrue(buffer.flush());
+        assertEquals(0, buffer.getStats().getQueueDepth());
+        assertEquals(List.of(user1.getId()), jdbcTemplate.queryForList(
+                "SELECT USER_ID FROM PUBLIC.LIKES WHERE FILM_ID = ?;", Integer.class, film.getId()));
+        assertEquals(1, popularityIndex.getLikes(film.getId()));
+    }
+
+    @Test
+    public void testLikeWriteBufferDropsPoisonEvents() {
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        List<User> users = new ArrayList<>();
+        for (User user : getUser()) {
+            users.add(userStorage.createUser(user));
+        }
+        int poisonedId = users.get(1).getId();
+        JdbcTemplate failingForUser = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                // Лайк одного пользователя не записывается никогда, хотя база доступна
+                if (sql.startsWith("INSERT") && batchArgs.stream().anyMatch(row -> row[1].equals(poisonedId))) {
+                    throw new DataAccessResourceFailureException("Ошибка записи");
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        LikeWriteBuffer buffer = new LikeWriteBuffer(failingForUser, transactionManager, likeMatrix, listVersions,
+                List.of(popularityIndex, likeMatrix), true, 100, 100, 60_000);
+
+        // Несуществующий пользователь нарушает внешний ключ и выбрасывается сразу
+        buffer.like(film.getId(), users.get(0).getId());
+        buffer.like(film.getId(), poisonedId);
+        buffer.like(film.getId(), Integer.MAX_VALUE);
+        assertFalse(buffer.flush());
+        assertEquals(1, buffer.getStats().getQueueDepth());
+        assertEquals(1, buffer.getStats().getDroppedEvents());
+        assertEquals(1, popularityIndex.getLikes(film.getId()));
+
+        // Сброс, где не записалось ни одно событие, попыткой не считается
+        assertFalse(buffer.flush());
+        assertEquals(1, buffer.getStats().getQueueDepth());
+
+        buffer.like(film.getId(), users.get(2).getId());
+        assertFalse(buffer.flush());
+        buffer.unlike(film.getId(), users.get(0).getId());
+        assertTrue(buffer.flush());
+        assertEquals(0, buffer.getStats().getQueueDepth());
+        assertEquals(2, buffer.getStats().getDroppedEvents());
+        assertEquals(List.of(users.get(2).getId()), jdbcTemplate.queryForList(
+                "SELECT USER_ID FROM PUBLIC.LIKES WHERE FILM_ID = ?;", Integer.class, film.getId()));
+        assertEquals(1, popularityIndex.getLikes(film.getId()));
+    }
+
+    @Test
+    public void testIndexesIgnoreRolledBackWrites() {
+        Film film = filmStorage.createFilm(getFilms().get(0));
+        User user = userStorage.createUser(getUser().get(0));
+        User friend = userStorage.createUser(getUser().get(1));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            filmStorage.addLikeToFilm(film.getId(), user.getId());
+            userStorage.checkAndUpdateFriends(user.getId(), friend.getId());
+            Film renamed = getFilms().get(1);
+            renamed.setId(film.getId());
+            filmStorage.updateFilm(renamed);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, likeMatrix.getLikeCount(film.getId()));
+        assertEquals(0, popularityIndex.getLikes(film.getId()));
+        assertEquals(0, friendshipGraph.getFriends(user.getId()).length);
+        assertArrayEquals(new int[]{film.getId()}, filmSearchIndex.search("first", 10));
+        assertArrayEquals(new int[0], filmSearchIndex.search("second", 10));
+    }
+
     @Test
     public void testGetMpaList() {
         List<Mpa> mpaList = mpaStorageDb.getMpaList();
@@ -309,6 +1068,24 @@ class FilmorateApplicationTests {
                 });
     }
 
+    @Test
+    public void testReferenceDataCacheRefresh() {
+        jdbcTemplate.update("INSERT INTO PUBLIC.GENRES (GENRE_ID, GENRE_TITLE) VALUES (7, 'Фантастика');");
+        try {
+            assertTrue(genreStorageDb.getGenreById(7).isEmpty());
+
+            referenceDataCache.refresh();
+
+            assertEquals(7, genreStorageDb.getGenreList().size());
+            assertThat(genreStorageDb.getGenreById(7))
+                    .isPresent()
+                    .hasValueSatisfying(genre -> assertThat(genre).hasFieldOrPropertyWithValue("name", "Фантастика"));
+        } finally {
+            jdbcTemplate.update("DELETE FROM PUBLIC.GENRES WHERE GENRE_ID = 7;");
+            referenceDataCache.refresh();
+        }
+    }
+
     private List<User> getUser() {
         return List.of(
                 User.builder()
@@ -335,6 +1112,39 @@ class FilmorateApplicationTests {
         );
     }
 
+    private User getExtraUser(String login) {
+        return User.builder()
+                .email(login + "@mail.ru")
+                .login(login)
+                .name("Name of " + login)
+                .birthday(LocalDate.of(1990, 5, 5))
+                .build();
+    }
+
+    private void makeFriends(User user, User friend) {
+        userStorage.checkAndUpdateFriends(user.getId(), friend.getId());
+        userStorage.checkAndUpdateFriends(friend.getId(), user.getId());
+    }
+
+    private StorageOperationStats getOperationStats(String operation) {
+        return storageMetrics.getStats().stream()
+                .filter(stats -> stats.getOperation().equals(operation))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private List<Integer> getGenreIds(Film film) {
+        return film.getGenres().stream().map(Genre::getId).collect(toList());
+    }
+
+    private List<Film> findFilms(FilmFilter filter) {
+        return filmStorage.findFilms(filter, 0, 100).getItems();
+    }
+
+    private List<Integer> getIds(List<Film> films) {
+        return films.stream().map(Film::getId).collect(toList());
+    }
+
     private List<Film> getFilms() {
         return List.of(
                 Film.builder()
@@ -0,0 +1,237 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import ru.yandex.practicum.filmorate.dao.cache.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.dao.impl.FilmDbStorage;
+import ru.yandex.practicum.filmorate.dao.impl.UserDbStorage;
+import ru.yandex.practicum.filmorate.dao.index.FilmFilterIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.dao.index.FriendshipGraph;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.yandex.practicum.filmorate.metrics.SqlStatementBudget.assertWithinBudget;
+
+/**
+ * Бюджеты SQL-запросов на каждый эндпоинт. Если изменение в хранилище добавляет обращения к базе,
+ * тест падает с фактическим числом запросов; бюджет повышается только осознанно.
+ * Потоковые эндпоинты (application/x-ndjson) пишут ответ через асинхронный исполнитель MVC, который здесь
+ * заменён синхронным, чтобы их запросы выполнялись и считались в потоке теста.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@AutoConfigureMockMvc
+class SqlStatementBudgetTests {
+
+    private static final String FILM_JSON = "{\"name\":\"Новый фильм\",\"description\":\"Описание\","
+            + "\"releaseDate\":\"2000-01-01\",\"duration\":100,\"mpa\":{\"id\":1},"
+            + "\"genres\":[{\"id\":1},{\"id\":2}]}";
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private FilmDbStorage filmStorage;
+    @Autowired
+    private UserDbStorage userStorage;
+    @Autowired
+    private FilmPopularityIndex popularityIndex;
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+    @Autowired
+    private FriendshipGraph friendshipGraph;
+    @Autowired
+    private LikeMatrix likeMatrix;
+    @Autowired
+    private FilmSearchIndex filmSearchIndex;
+    @Autowired
+    private FilmFilterIndex filmFilterIndex;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Film film;
+    private User user;
+    private User friend;
+
+    @BeforeEach
+    public void setUp() {
+        popularityIndex.reload();
+        referenceDataCache.refresh();
+        friendshipGraph.reload();
+        likeMatrix.reload();
+        filmSearchIndex.reload();
+        filmFilterIndex.reload();
+        film = filmStorage.createFilm(makeFilm("Фильм"));
+        filmStorage.createFilm(makeFilm("Второй фильм"));
+        user = userStorage.createUser(makeUser("user"));
+        friend = userStorage.createUser(makeUser("friend"));
+        userStorage.checkAndUpdateFriends(user.getId(), friend.getId());
+        filmStorage.addLikeToFilm(film.getId(), friend.getId());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM PUBLIC.LIKES;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FRIENDS;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILM_GENRE;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILMS;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.USERS;");
+    }
+
+    @Test
+    public void testFilmReadEndpoints() throws Throwable {
+        expectOk("GET /films", 2, get("/films"));
+        expectOk("GET /films?limit", 2, get("/films").param("limit", "10"));
+        expectOk("GET /films?genreId&mpaId&yearFrom", 2, get("/films").param("genreId", "1", "2")
+                .param("mpaId", "1").param("yearFrom", "1990"));
+        expectOk("GET /films?sort=popular", 2, get("/films").param("sort", "popular").param("yearTo", "2020"));
+        expectOk("GET /films/{id}", 2, get("/films/{id}", film.getId()));
+        expectOk("GET /films/popular", 2, get("/films/popular"));
+        expectOk("GET /films/popular из кэша", 0, get("/films/popular"));
+        expectOk("GET /films/search", 2, get("/films/search").param("q", "фил"));
+        expectOk("GET /films/trending", 2, get("/films/trending"));
+    }
+
+    @Test
+    public void testStreamingEndpoints() throws Throwable {
+        expectOk("GET /films (NDJSON)", 1, get("/films").accept(MediaType.APPLICATION_NDJSON));
+        expectOk("GET /users (NDJSON)", 1, get("/users").accept(MediaType.APPLICATION_NDJSON));
+    }
+
+    @Test
+    public void testFilmWriteEndpoints() throws Throwable {
+        expectOk("POST /films", 2, post("/films").contentType(MediaType.APPLICATION_JSON)
+                .content(FILM_JSON));
+        expectOk("PUT /films", 2, put("/films").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":" + film.getId() + "," + FILM_JSON.substring(1)));
+        expectOk("POST /films/batch", 2, post("/films/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("[" + FILM_JSON + "," + FILM_JSON + "]"));
+        // Строку фильма возвращает сама запись версии, жанры берутся из памяти
+        expectOk("PUT /films/{id}/like/{userId}", 2, put("/films/{id}/like/{userId}", film.getId(), user.getId()));
+        expectOk("DELETE /films/{id}/like/{userId}", 2,
+                delete("/films/{id}/like/{userId}", film.getId(), user.getId()));
+        // Ничего не изменивший лайк или дизлайк читает фильм одним запросом вместе с проверкой пользователя
+        expectOk("PUT /films/{id}/like/{userId} повторно", 2,
+                put("/films/{id}/like/{userId}", film.getId(), friend.getId()));
+        expectOk("DELETE /films/{id}/like/{userId} без лайка", 2,
+                delete("/films/{id}/like/{userId}", film.getId(), user.getId()));
+    }
+
+    @Test
+    public void testUserReadEndpoints() throws Throwable {
+        expectOk("GET /users", 1, get("/users"));
+        expectOk("GET /users?limit", 1, get("/users").param("limit", "10"));
+        expectOk("GET /users/{id}", 1, get("/users/{id}", user.getId()));
+        expectOk("GET /users/{id}/friends", 1, get("/users/{id}/friends", user.getId()));
+        expectOk("GET /users/{id}/friends/common/{otherId}", 1,
+                get("/users/{id}/friends/common/{otherId}", user.getId(), friend.getId()));
+        expectOk("GET /users/{id}/friends/suggestions", 2, get("/users/{id}/friends/suggestions", user.getId()));
+        expectOk("GET /users/{id}/recommendations", 2, get("/users/{id}/recommendations", user.getId()));
+    }
+
+    @Test
+    public void testUserWriteEndpoints() throws Throwable {
+        expectOk("POST /users", 1, post("/users").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\":\"new@mail.ru\",\"login\":\"new\",\"birthday\":\"2000-01-01\"}"));
+        expectOk("PUT /users", 1, put("/users").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":" + user.getId() + ",\"email\":\"user@mail.ru\",\"login\":\"user\","
+                        + "\"name\":\"Новое имя\",\"birthday\":\"2000-01-01\"}"));
+        expectOk("PUT /users/{id}/friends/{friendId}", 2,
+                put("/users/{id}/friends/{friendId}", friend.getId(), user.getId()));
+        expectOk("DELETE /users/{id}/friends/{friendId}", 3,
+                delete("/users/{id}/friends/{friendId}", user.getId(), friend.getId()));
+    }
+
+    @Test
+    public void testConditionalGetEndpoints() throws Throwable {
+        expectNotModified("GET /films/{id}", 1, get("/films/{id}", film.getId()));
+        expectNotModified("GET /films", 0, get("/films"));
+        expectNotModified("GET /films?limit", 0, get("/films").param("limit", "10"));
+        expectNotModified("GET /users/{id}", 1, get("/users/{id}", user.getId()));
+        expectNotModified("GET /users", 0, get("/users"));
+        expectNotModified("GET /users?limit", 0, get("/users").param("limit", "10"));
+    }
+
+    @Test
+    public void testReferenceDataEndpoints() throws Throwable {
+        expectOk("GET /genres", 0, get("/genres"));
+        expectOk("GET /genres/{id}", 0, get("/genres/{id}", 1));
+        expectOk("GET /mpa", 0, get("/mpa"));
+        expectOk("GET /mpa/{id}", 0, get("/mpa/{id}", 1));
+        expectOk("GET /metrics/storage", 0, get("/metrics/storage"));
+        expectOk("DELETE /metrics/storage", 0, delete("/metrics/storage"));
+        expectOk("GET /metrics/likes-buffer", 0, get("/metrics/likes-buffer"));
+    }
+
+    @TestConfiguration
+    static class SynchronousMvcExecutorConfiguration {
+        /**
+         * Под этим именем Spring Boot передаёт исполнитель в MVC для асинхронных ответов.
+         */
+        @Bean
+        public AsyncTaskExecutor applicationTaskExecutor() {
+            return new TaskExecutorAdapter(new SyncTaskExecutor());
+        }
+    }
+
+    private void expectOk(String operation, int budget, RequestBuilder request) throws Throwable {
+        assertWithinBudget(operation, budget, () -> mockMvc.perform(request).andExpect(status().isOk()));
+    }
+
+    /**
+     * Запрашивает ресурс, а затем повторяет запрос с полученным ETag и ждёт 304 в пределах бюджета.
+     */
+    private void expectNotModified(String operation, int budget, MockHttpServletRequestBuilder request)
+            throws Throwable {
+        String etag = mockMvc.perform(request).andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag, operation + " не вернул ETag");
+        assertWithinBudget(operation + " If-None-Match", budget, () -> mockMvc.perform(
+                request.header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isNotModified()));
+    }
+
+    private static Film makeFilm(String name) {
+        return Film.builder()
+                .name(name)
+                .description("Описание")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(new Mpa(1, "G"))
+                .genres(new LinkedHashSet<>())
+                .build();
+    }
+
+    private static User makeUser(String login) {
+        return User.builder()
+                .email(login + "@mail.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build();
+    }
+}
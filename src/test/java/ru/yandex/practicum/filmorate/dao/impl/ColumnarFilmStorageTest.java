@@ -0,0 +1,179 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.AllArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.index.CategoryPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmFilterIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.dao.index.TrendingFilmsIndex;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.yandex.practicum.filmorate.metrics.SqlStatementBudget.assertWithinBudget;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@ActiveProfiles(ColumnarFilmStorage.PROFILE)
+@AllArgsConstructor(onConstructor = @__(@Autowired))
+class ColumnarFilmStorageTest {
+
+    private FilmStorage filmStorage;
+    private FilmDbStorage filmDbStorage;
+    private FilmColumnStore columns;
+    private UserDbStorage userStorage;
+    private FilmPopularityIndex popularityIndex;
+    private LikeMatrix likeMatrix;
+    private FilmSearchIndex filmSearchIndex;
+    private FilmFilterIndex filmFilterIndex;
+    private TrendingFilmsIndex trendingIndex;
+    private CategoryPopularityIndex categoryPopularityIndex;
+    private JdbcTemplate jdbcTemplate;
+    private ListVersions listVersions;
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM PUBLIC.LIKES;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILM_GENRE;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILMS;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.USERS;");
+        popularityIndex.reload();
+        likeMatrix.reload();
+        filmSearchIndex.reload();
+        filmFilterIndex.reload();
+        trendingIndex.reload();
+        categoryPopularityIndex.reload();
+        columns.reload();
+        listVersions.reload();
+    }
+
+    @Test
+    public void testColumnarStorageIsPrimary() {
+        assertInstanceOf(ColumnarFilmStorage.class, filmStorage);
+    }
+
+    @Test
+    public void testReadsMatchDatabaseWithoutStatements() throws Throwable {
+        Film first = filmStorage.createFilm(makeFilm("Первый фильм", "Описание первого", 1, 2, 3));
+        Film second = filmStorage.createFilms(List.of(
+                makeFilm("Второй фильм", null, 2), makeFilm("Третий", "Ещё одно описание"))).get(0);
+        Film updated = makeFilm("Первый фильм, новое название", "Новое описание", 4);
+        updated.setId(first.getId());
+        filmStorage.updateFilm(updated);
+        User user = userStorage.createUser(makeUser());
+        assertTrue(filmStorage.addLikeToFilm(second.getId(), user.getId()));
+        assertTrue(filmStorage.addLikeToFilm(first.getId(), user.getId()));
+        assertTrue(filmStorage.deleteLike(first.getId(), user.getId()));
+
+        for (int id : new int[]{first.getId(), second.getId()}) {
+            Film expected = filmDbStorage.getFilmById(id);
+            Film actual = assertWithinBudget("getFilmById", 0, () -> filmStorage.getFilmById(id));
+            assertEquals(expected, actual);
+            assertEquals(expected.getVersion(), actual.getVersion());
+            assertEquals(filmDbStorage.getFilmVersion(id),
+                    (long) assertWithinBudget("getFilmVersion", 0, () -> filmStorage.getFilmVersion(id)));
+        }
+        assertNull(filmStorage.getFilmById(second.getId()).getDescription());
+        assertEquals(filmDbStorage.getFilmsVersion(),
+                (long) assertWithinBudget("getFilmsVersion", 0, () -> filmStorage.getFilmsVersion()));
+        assertEquals(byId(filmDbStorage.getFilms()),
+                assertWithinBudget("getFilms", 0, () -> filmStorage.getFilms()));
+        assertEquals(filmDbStorage.getFilmsPage(first.getId(), 1),
+                assertWithinBudget("getFilmsPage", 0, () -> filmStorage.getFilmsPage(first.getId(), 1)));
+        assertEquals(filmDbStorage.getPopularFilms(2),
+                assertWithinBudget("getPopularFilms", 0, () -> filmStorage.getPopularFilms(2)));
+        assertEquals(filmDbStorage.searchFilms("фильм", 10),
+                assertWithinBudget("searchFilms", 0, () -> filmStorage.searchFilms("фильм", 10)));
+        FilmFilter filter = FilmFilter.builder().genreIds(Set.of(2)).build();
+        assertEquals(filmDbStorage.findFilms(filter, 0, 10),
+                assertWithinBudget("findFilms", 0, () -> filmStorage.findFilms(filter, 0, 10)));
+        assertTrue(assertWithinBudget("isFilmPresent", 0, () -> filmStorage.isFilmPresent(first.getId())));
+        assertFalse(filmStorage.isFilmPresent(-1));
+        assertThrows(NotFoundException.class, () -> filmStorage.getFilmById(-1));
+        assertThrows(NotFoundException.class, () -> filmStorage.getFilmVersion(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testColumnsRebuildFromDatabase() {
+        Film film = filmStorage.createFilm(makeFilm("Фильм", "Описание", 1, 6));
+        jdbcTemplate.update("UPDATE PUBLIC.FILMS SET TITLE = 'Изменён в базе', VERSION = 7 WHERE FILM_ID = ?;",
+                film.getId());
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILM_GENRE WHERE FILM_ID = ? AND GENRE_ID = 6;", film.getId());
+        assertEquals("Фильм", filmStorage.getFilmById(film.getId()).getName());
+
+        columns.reload();
+        listVersions.reload();
+        Film rebuilt = filmStorage.getFilmById(film.getId());
+        assertEquals(filmDbStorage.getFilmById(film.getId()), rebuilt);
+        assertEquals("Изменён в базе", rebuilt.getName());
+        assertEquals(List.of(1), rebuilt.getGenres().stream().map(Genre::getId).collect(Collectors.toList()));
+        assertEquals(7, filmStorage.getFilmVersion(film.getId()));
+        assertEquals(filmDbStorage.getFilmsVersion(), filmStorage.getFilmsVersion());
+    }
+
+    @Test
+    public void testRewrittenTextIsReclaimed() {
+        Film first = filmStorage.createFilm(makeFilm("Фильм", "Описание", 1));
+        Film second = filmStorage.createFilm(makeFilm("Второй", null, 2));
+        // Длинное описание не помещается на место короткого и дописывается в конец, короткое пишется на место
+        String longDescription = "Очень длинное описание фильма. ".repeat(6);
+        for (int i = 0; i < 2000; i++) {
+            Film changed = makeFilm("Фильм " + i, i % 2 == 0 ? longDescription + i : "Описание " + i, 1);
+            changed.setId(first.getId());
+            filmStorage.updateFilm(changed);
+        }
+        // Без перестройки перезаписанный текст занял бы больше 300 КБ
+        assertTrue(columns.textSize() < 160_000, "текст вне кучи: " + columns.textSize() + " байт");
+        assertEquals(filmDbStorage.getFilmById(first.getId()), filmStorage.getFilmById(first.getId()));
+        assertEquals("Описание 1999", filmStorage.getFilmById(first.getId()).getDescription());
+        assertEquals(filmDbStorage.getFilmById(second.getId()), filmStorage.getFilmById(second.getId()));
+    }
+
+    private static List<Film> byId(List<Film> films) {
+        return films.stream().sorted(Comparator.comparingInt(Film::getId)).collect(Collectors.toList());
+    }
+
+    private static Film makeFilm(String name, String description, int... genreIds) {
+        LinkedHashSet<Genre> genres = new LinkedHashSet<>();
+        for (int genreId : genreIds) {
+            genres.add(new Genre(genreId, null));
+        }
+        return Film.builder()
+                .name(name)
+                .description(description)
+                .releaseDate(LocalDate.of(2001, 5, 17))
+                .duration(95)
+                .mpa(new Mpa(3, null))
+                .genres(genres)
+                .build();
+    }
+
+    private static User makeUser() {
+        return User.builder()
+                .email("columnar@mail.ru")
+                .login("columnar")
+                .name("Колонки")
+                .birthday(LocalDate.of(1990, 3, 1))
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.AllArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@AllArgsConstructor(onConstructor = @__(@Autowired))
+class FilmIdAllocatorTest {
+
+    private static final int THREADS = 8;
+    private static final int FILMS_PER_THREAD = 3 * FilmIdAllocator.BLOCK_SIZE;
+
+    private FilmIdAllocator idAllocator;
+    private FilmDbStorage filmStorage;
+    private FilmPopularityIndex popularityIndex;
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILM_GENRE;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILMS;");
+        popularityIndex.reload();
+    }
+
+    @Test
+    public void testNextIdIsUniqueUnderConcurrency() throws Exception {
+        List<Integer> ids = runConcurrently(() -> idAllocator.nextId());
+        assertEquals(THREADS * FILMS_PER_THREAD, new HashSet<>(ids).size());
+    }
+
+    @Test
+    public void testConcurrentCreateFilmProducesNoDuplicateIds() throws Exception {
+        List<Integer> ids = runConcurrently(() -> filmStorage.createFilm(getFilm()).getId());
+        assertEquals(THREADS * FILMS_PER_THREAD, new HashSet<>(ids).size());
+        Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT FILM_ID) FROM PUBLIC.FILMS;", Integer.class);
+        assertEquals(THREADS * FILMS_PER_THREAD, rows);
+    }
+
+    private List<Integer> runConcurrently(Callable<Integer> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<List<Integer>>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    List<Integer> ids = new ArrayList<>();
+                    for (int j = 0; j < FILMS_PER_THREAD; j++) {
+                        ids.add(task.call());
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+            List<Integer> ids = new ArrayList<>();
+            for (Future<List<Integer>> future : futures) {
+                ids.addAll(future.get(1, TimeUnit.MINUTES));
+            }
+            return ids;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Film getFilm() {
+        return Film.builder()
+                .name("Film")
+                .description("Description of film")
+                .releaseDate(LocalDate.of(1990, 12, 5))
+                .duration(100)
+                .mpa(new Mpa(1, "G"))
+                .build();
+    }
+}
@@ -0,0 +1,155 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import lombok.AllArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.dao.impl.FilmDbStorage;
+import ru.yandex.practicum.filmorate.dao.impl.UserDbStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сверяет популярные фильмы по жанрам и рейтингам с перебором в SQL. Набор категории ограничен тремя фильмами,
+ * чтобы вытеснение, граница и пересборка срабатывали на небольших данных.
+ */
+@SpringBootTest(properties = "filmorate.films.popular-by-category.capacity=3")
+@AutoConfigureTestDatabase
+@AllArgsConstructor(onConstructor = @__(@Autowired))
+class CategoryPopularityIndexTest {
+
+    private static final String POPULAR_SQL = "SELECT f.FILM_ID FROM PUBLIC.FILMS f\n" +
+            "LEFT JOIN PUBLIC.LIKES l ON f.FILM_ID = l.FILM_ID\n" +
+            "WHERE (? IS NULL OR EXISTS (SELECT 1 FROM PUBLIC.FILM_GENRE fg\n" +
+            "WHERE fg.FILM_ID = f.FILM_ID AND fg.GENRE_ID = ?))\n" +
+            "AND (? IS NULL OR f.RATING_ID = ?)\n" +
+            "GROUP BY f.FILM_ID ORDER BY COUNT(l.USER_ID) DESC, f.FILM_ID LIMIT ?;";
+    private static final int GENRES = 6;
+    private static final int MPA = 5;
+
+    private FilmDbStorage filmStorage;
+    private UserDbStorage userStorage;
+    private LikeMatrix likeMatrix;
+    private FilmPopularityIndex popularityIndex;
+    private FilmFilterIndex filmFilterIndex;
+    private CategoryPopularityIndex categoryPopularityIndex;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        likeMatrix.reload();
+        popularityIndex.reload();
+        filmFilterIndex.reload();
+        categoryPopularityIndex.reload();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM PUBLIC.LIKES;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FRIENDS;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILM_GENRE;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.FILMS;");
+        jdbcTemplate.update("DELETE FROM PUBLIC.USERS;");
+    }
+
+    @Test
+    public void testMatchesSqlWhileLikesAndCategoriesChange() {
+        Random random = new Random(11);
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            films.add(filmStorage.createFilm(makeFilm(random)));
+        }
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            users.add(userStorage.createUser(makeUser(i)));
+        }
+        for (int step = 0; step < 600; step++) {
+            Film film = films.get(random.nextInt(films.size()));
+            int userId = users.get(random.nextInt(users.size())).getId();
+            int action = random.nextInt(10);
+            if (action == 0) {
+                Film changed = makeFilm(random);
+                changed.setId(film.getId());
+                filmStorage.updateFilm(changed);
+            } else if (action < 7) {
+                filmStorage.addLikeToFilm(film.getId(), userId);
+            } else {
+                filmStorage.deleteLike(film.getId(), userId);
+            }
+            if (step % 10 == 0) {
+                assertMatchesSql();
+            }
+        }
+        assertMatchesSql();
+
+        categoryPopularityIndex.reload();
+        assertMatchesSql();
+    }
+
+    private void assertMatchesSql() {
+        for (int count : new int[]{1, 3, 5}) {
+            assertEquals(findPopular(null, null, count), getPopular(null, null, count));
+            for (int genreId = 1; genreId <= GENRES; genreId++) {
+                assertEquals(findPopular(genreId, null, count), getPopular(genreId, null, count),
+                        "жанр " + genreId + ", count " + count);
+                for (int mpaId = 1; mpaId <= MPA; mpaId++) {
+                    assertEquals(findPopular(genreId, mpaId, count), getPopular(genreId, mpaId, count),
+                            "жанр " + genreId + ", рейтинг " + mpaId + ", count " + count);
+                }
+            }
+            for (int mpaId = 1; mpaId <= MPA; mpaId++) {
+                assertEquals(findPopular(null, mpaId, count), getPopular(null, mpaId, count),
+                        "рейтинг " + mpaId + ", count " + count);
+            }
+        }
+    }
+
+    private List<Integer> getPopular(Integer genreId, Integer mpaId, int count) {
+        return filmStorage.getPopularFilms(count, genreId, mpaId).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+    }
+
+    private List<Integer> findPopular(Integer genreId, Integer mpaId, int count) {
+        return jdbcTemplate.queryForList(POPULAR_SQL, Integer.class, genreId, genreId, mpaId, mpaId, count);
+    }
+
+    private static Film makeFilm(Random random) {
+        LinkedHashSet<Genre> genres = new LinkedHashSet<>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            genres.add(new Genre(1 + random.nextInt(GENRES), null));
+        }
+        return Film.builder()
+                .name("Фильм")
+                .description("Описание")
+                .releaseDate(LocalDate.of(2001, 5, 17))
+                .duration(95)
+                .mpa(new Mpa(1 + random.nextInt(MPA), null))
+                .genres(genres)
+                .build();
+    }
+
+    private static User makeUser(int number) {
+        return User.builder()
+                .email("category" + number + "@mail.ru")
+                .login("category" + number)
+                .name("Пользователь " + number)
+                .birthday(LocalDate.of(1990, 3, 1))
+                .build();
+    }
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LikeCountersTest {
+
+    @Test
+    public void testConcurrentIncrementsOfHotFilmAreNotLost() throws Exception {
+        LikeCounters counters = new LikeCounters();
+        int threads = 4;
+        int likes = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < likes; i++) {
+                        counters.increment(1);
+                        if (i % 2 == 0) {
+                            counters.decrement(1);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(threads * likes / 2, counters.count(1));
+        assertEquals(0, counters.count(2));
+        counters.clear();
+        assertEquals(0, counters.count(1));
+    }
+}
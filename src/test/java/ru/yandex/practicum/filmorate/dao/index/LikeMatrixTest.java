@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LikeMatrixTest {
+
+    @Test
+    public void testConcurrentLikesKeepBothDirectionsInSync() throws Exception {
+        LikeMatrix matrix = new LikeMatrix(null);
+        int threads = 4;
+        int users = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    // Все потоки лайкают один общий фильм и свой собственный, а со своего снимают лайки чётных
+                    for (int userId = 1; userId <= users; userId++) {
+                        matrix.onLikeAdded(1, userId);
+                        matrix.onLikeAdded(2 + thread, userId);
+                        if (userId % 2 == 0) {
+                            matrix.onLikeRemoved(2 + thread, userId);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(users, matrix.getLikeCount(1));
+        for (int t = 0; t < threads; t++) {
+            assertEquals(users / 2, matrix.getLikeCount(2 + t));
+        }
+        assertTrue(matrix.hasLiked(users, 1));
+        assertFalse(matrix.hasLiked(users, 2));
+        assertEquals(1 + threads, matrix.getCommonLikes(1, 3));
+        assertEquals(1, matrix.getCommonLikes(1, 2));
+        // Строки фильмов догоняют журналы полос: новому пользователю с фильмом 2 советуют остальные фильмы нечётных
+        int newcomer = users + 1;
+        matrix.onLikeAdded(2, newcomer);
+        int[] recommended = matrix.recommendFilms(newcomer, LikeMatrix.MAX_RECOMMENDATIONS);
+        assertEquals(threads, recommended.length);
+        for (int filmId : recommended) {
+            assertTrue(filmId >= 1 && filmId < 2 + threads && filmId != 2);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoaringIntSetTest {
+
+    @Test
+    public void testMatchesTreeSetAcrossBlockConversions() {
+        Random random = new Random(42);
+        RoaringIntSet set = new RoaringIntSet();
+        TreeSet<Integer> expected = new TreeSet<>();
+        // Два блока по старшим 16 битам, в первом значений хватает, чтобы он стал битовой картой и обратно
+        for (int i = 0; i < 40_000; i++) {
+            int value = random.nextBoolean() ? random.nextInt(9_000) : (1 << 16) + random.nextInt(300);
+            boolean add = i < 20_000 ? random.nextInt(4) > 0 : random.nextInt(4) == 0;
+            if (add) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+            assertEquals(expected.size(), set.cardinality());
+        }
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), set.toIntArray());
+        for (int value = 0; value < 9_000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+
+    @Test
+    public void testAndCardinality() {
+        RoaringIntSet dense = new RoaringIntSet();
+        RoaringIntSet sparse = new RoaringIntSet();
+        RoaringIntSet even = new RoaringIntSet();
+        for (int value = 0; value < 10_000; value++) {
+            dense.add(value);
+            if (value % 2 == 0) {
+                even.add(value);
+            }
+        }
+        for (int value = 0; value < 200_000; value += 1_000) {
+            sparse.add(value);
+        }
+        assertEquals(10, dense.andCardinality(sparse));
+        assertEquals(10, sparse.andCardinality(dense));
+        assertEquals(5_000, dense.andCardinality(even));
+        assertEquals(10, even.andCardinality(sparse));
+        assertEquals(0, new RoaringIntSet().andCardinality(dense));
+    }
+}
@@ -0,0 +1,121 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TrendingFilmsIndexTest {
+
+    @Test
+    public void testBucketsLeaveWindowsOnDecay() {
+        MutableClock clock = new MutableClock();
+        TrendingFilmsIndex index = new TrendingFilmsIndex(null, 0, clock);
+        index.onLikeAdded(1, 1);
+        index.onLikeAdded(1, 2);
+        clock.advance(Duration.ofMinutes(30));
+        index.decay();
+        index.onLikeAdded(2, 1);
+        index.onLikeAdded(2, 2);
+        index.onLikeAdded(2, 3);
+        assertEquals(List.of(2, 1), index.getTopFilmIds(TrendingWindow.HOUR, 10));
+
+        clock.advance(Duration.ofMinutes(45));
+        index.decay();
+        assertEquals(List.of(2), index.getTopFilmIds(TrendingWindow.HOUR, 10));
+        assertEquals(List.of(2, 1), index.getTopFilmIds(TrendingWindow.DAY, 10));
+
+        // Дизлайк уменьшает текущие корзины: у фильма 1 лайков за час не было, и отрицательная сумма считается нулём
+        index.onLikeRemoved(1, 1);
+        index.onLikeRemoved(2, 3);
+        assertEquals(List.of(2), index.getTopFilmIds(TrendingWindow.HOUR, 10));
+        assertEquals(List.of(2, 1), index.getTopFilmIds(TrendingWindow.WEEK, 10));
+
+        clock.advance(Duration.ofHours(24));
+        index.decay();
+        assertEquals(List.of(), index.getTopFilmIds(TrendingWindow.DAY, 10));
+        assertEquals(List.of(2, 1), index.getTopFilmIds(TrendingWindow.WEEK, 10));
+        assertEquals(List.of(2), index.getTopFilmIds(TrendingWindow.WEEK, 1));
+
+        clock.advance(Duration.ofDays(7));
+        index.decay();
+        assertEquals(List.of(), index.getTopFilmIds(TrendingWindow.WEEK, 10));
+        // Дизлайк фильма, забытого вместе с лайками за неделю, ничего не меняет
+        index.onLikeRemoved(2, 1);
+        index.onLikeAdded(1, 1);
+        assertEquals(List.of(1), index.getTopFilmIds(TrendingWindow.HOUR, 10));
+    }
+
+    @Test
+    public void testConcurrentLikesSurviveDecay() throws Exception {
+        MutableClock clock = new MutableClock();
+        TrendingFilmsIndex index = new TrendingFilmsIndex(null, 0, clock);
+        int threads = 4;
+        int likes = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int userId = 1; userId <= likes; userId++) {
+                        index.onLikeAdded(1, userId);
+                    }
+                }));
+            }
+            // Окна сдвигаются на 59 минут, пока идут лайки, поэтому все они остаются в окне часа
+            futures.add(executor.submit(() -> {
+                for (int minute = 0; minute < 59; minute++) {
+                    clock.advance(Duration.ofMinutes(1));
+                    index.decay();
+                }
+            }));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // Фильм 2 отстаёт от фильма 1 на лайк, а после двух дизлайков фильма 1 обгоняет его
+        for (int i = 1; i < threads * likes; i++) {
+            index.onLikeAdded(2, i);
+        }
+        assertEquals(List.of(1, 2), index.getTopFilmIds(TrendingWindow.HOUR, 10));
+        index.onLikeRemoved(1, 1);
+        index.onLikeRemoved(1, 2);
+        assertEquals(List.of(2, 1), index.getTopFilmIds(TrendingWindow.WEEK, 10));
+    }
+
+    private static class MutableClock extends Clock {
+        private volatile Instant now = Instant.parse("2024-01-01T10:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.function.ThrowingSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Проверка числа SQL-запросов, которые выполняет участок кода в текущем потоке.
+ * Запросы считает {@link StatementCountingDataSource}, пакет через executeBatch считается одним запросом.
+ */
+public final class SqlStatementBudget {
+
+    private SqlStatementBudget() {
+    }
+
+    /**
+     * Выполняет действие и падает, если оно выполнило больше budget SQL-запросов.
+     */
+    public static <T> T assertWithinBudget(String operation, int budget, ThrowingSupplier<T> action) throws Throwable {
+        long before = StatementCounter.current();
+        T result = action.get();
+        long statements = StatementCounter.current() - before;
+        if (statements > budget) {
+            fail(String.format("%s выполнил SQL-запросов: %d, бюджет: %d", operation, statements, budget));
+        }
+        return result;
+    }
+
+    public static void assertWithinBudget(String operation, int budget, Executable action) throws Throwable {
+        assertWithinBudget(operation, budget, () -> {
+            action.execute();
+            return null;
+        });
+    }
+}